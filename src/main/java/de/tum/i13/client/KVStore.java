@@ -1,19 +1,26 @@
 package de.tum.i13.client;
 
+import de.tum.i13.shared.BinaryProtocol;
 import de.tum.i13.shared.Hash;
 import de.tum.i13.shared.InetSocketAddressTypeConverter;
 import de.tum.i13.shared.datastructure.ActiveConnection;
 import de.tum.i13.shared.datastructure.ServerData;
 import de.tum.i13.shared.datastructure.ServerSet;
 
+import java.io.BufferedOutputStream;
 import java.io.Console;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Logger;
@@ -27,11 +34,14 @@ import static java.util.stream.Collectors.toList;
 public class KVStore {
 
     private final Logger logger = Logger.getLogger(KVStore.class.getName());
+    //requests sent before reading their responses, bounded so neither side blocks on a full socket buffer
+    private static final int PIPELINE_WINDOW = 64;
     private final Map<ServerData, ServerSet> replicaTable = new HashMap<>();
     private ServerSet metaData;
     private ActiveConnection ac;
     private ServerData connectingServer;
     private Optional<User> currentUser;
+    private boolean isBinary = false;
 
     public KVStore() {
         this.metaData = new ServerSet();
@@ -89,6 +99,15 @@ public class KVStore {
                     connection.close();
                     return null;
                 }
+            } else if (response.startsWith("server_busy")) {
+                //overloaded, the server may have closed this connection as well, so connect again after backing off
+                connection.close();
+                backoffTime++;
+                try {
+                    Thread.sleep((long) exponentialWaitWithJitter(backoffTime));
+                } catch (InterruptedException ignored) {
+                }
+                connection = tryFindAliveServer(md5Key, isWriting);
             } else if (response.startsWith("server_stopped")) {
                 backoffTime++;
                 try {
@@ -103,6 +122,120 @@ public class KVStore {
         return null;
     }
 
+    /**
+     * Like communicate, over the binary protocol: the value is sent and received unchanged, line breaks included
+     *
+     * @param a
+     * @param key
+     * @param value null unless a is put
+     * @return the response as a text line, null if no server answered
+     */
+    private String communicateBinary(Action a, String key, String value) throws NoServerAliveException {
+        var md5Key = new Hash(key);
+        var backoffTime = 0;
+        for (int i = 0; i < 10; i++) {
+            //the server switches to frames right after its welcome line, so do not ask for replica data first
+            var connection = tryFindAliveServer(md5Key, a != Action.get, false);
+            try {
+                var output = new DataOutputStream(new BufferedOutputStream(connection.socket.getOutputStream()));
+                var reader = new BinaryProtocol.FrameReader(connection.socket.getInputStream());
+                output.writeByte(BinaryProtocol.HELLO);
+                BinaryProtocol.write(output, opcodeOf(a), key, value);
+                output.flush();
+                var response = reader.read();
+                if (response == null)
+                    return null;
+                logger.fine("received:" + response.getStatus());
+                switch (response.getStatus()) {
+                    case server_not_responsible:
+                        replicaTable.clear();
+                        BinaryProtocol.write(output, BinaryProtocol.KEYRANGE, null, null);
+                        output.flush();
+                        var keyrange = reader.read();
+                        if (keyrange == null || keyrange.getStatus() != BinaryProtocol.Status.keyrange_success)
+                            return null;
+                        metaData = ServerSet.parseFromString(keyrange.value);
+                        continue;
+                    case server_busy:
+                    case server_stopped:
+                        break;
+                    default:
+                        return response.toString();
+                }
+            } catch (IOException e) {
+                //e.g. a saturated server that rejected the connection with a text line
+                logger.info("binary request failed: " + e.getMessage());
+            } finally {
+                connection.close();
+            }
+            backoffTime++;
+            try {
+                Thread.sleep((long) exponentialWaitWithJitter(backoffTime));
+            } catch (InterruptedException ignored) {
+            }
+        }
+        return null;
+    }
+
+    private static int opcodeOf(Action a) {
+        switch (a) {
+            case put:
+                return BinaryProtocol.PUT;
+            case get:
+                return BinaryProtocol.GET;
+            case delete:
+                return BinaryProtocol.DELETE;
+            default:
+                throw new IllegalArgumentException("no opcode for " + a);
+        }
+    }
+
+    /**
+     * Send the requests of each server back to back over one connection, in windows of PIPELINE_WINDOW, and read the
+     * responses in order, one round trip per window instead of per request. A request the server does not finish
+     * (server_not_responsible, server_busy, ...) is sent again on its own by communicate, which handles these cases.
+     *
+     * @param keys arguments of the requests, "key value" for put
+     * @param a
+     * @return responses in the order of keys
+     */
+    private List<String> pipeline(List<String> keys, Action a) throws IOException, NoServerAliveException {
+        var responses = new String[keys.size()];
+        var byServer = new LinkedHashMap<ServerData, List<Integer>>();
+        for (int i = 0; i < keys.size(); i++)
+            byServer.computeIfAbsent(getServerFromHash(hashOf(keys.get(i), a)), s -> new ArrayList<>()).add(i);
+        var retry = new ArrayList<Integer>();
+        for (var indexes : byServer.values()) {
+            var connection = tryFindAliveServer(hashOf(keys.get(indexes.get(0)), a), a != Action.get);
+            try {
+                for (int start = 0; start < indexes.size(); start += PIPELINE_WINDOW) {
+                    var window = indexes.subList(start, Math.min(indexes.size(), start + PIPELINE_WINDOW));
+                    for (int i : window)
+                        connection.write(String.format("%s %s", a, keys.get(i)));
+                    connection.flush();
+                    for (int i : window) {
+                        var response = connection.readLine();
+                        logger.fine("received:" + response);
+                        if (response != null && (response.startsWith(a + "_success") || response.startsWith(a + "_error")
+                                || response.startsWith(a + "_update") || response.startsWith("server_write_lock")))
+                            responses[i] = response;
+                        else
+                            retry.add(i);
+                    }
+                }
+            } finally {
+                connection.close();
+            }
+        }
+        for (int i : retry)
+            responses[i] = communicate(keys.get(i), a);
+        return Arrays.asList(responses);
+    }
+
+    private static Hash hashOf(String key, Action a) {
+        return new Hash(a == Action.put ? key.split(" ")[0] : key);
+    }
+
     /**
      * Get a server responsible for the key. If a replica is present, randomize the out put server. This method automatically reads
      * the welcome message and return the ongoing connection. If for whatever the connection fails, try all the remaining server on the
@@ -114,6 +247,17 @@ public class KVStore {
      * @throws NoServerAliveException
      */
     private ActiveConnection tryFindAliveServer(Hash md5Key, boolean isWriting) throws NoServerAliveException {
+        return tryFindAliveServer(md5Key, isWriting, true);
+    }
+
+    /**
+     * @param md5Key
+     * @param isWriting
+     * @param mayAskReplicaData false to keep the connection free of requests, the replica table is only used
+     * @return ongoing connection
+     */
+    private ActiveConnection tryFindAliveServer(Hash md5Key, boolean isWriting, boolean mayAskReplicaData)
+            throws NoServerAliveException {
         var s = getServerFromHash(md5Key);
         //randomize s according to the replica table
         var replicaData = replicaTable.get(s);
@@ -126,7 +270,7 @@ public class KVStore {
             }
             s = backedList.get(random);
         } else if (!isWriting) {
-            shouldIAskForReplicaData = true;
+            shouldIAskForReplicaData = mayAskReplicaData;
         }
         ActiveConnection connection;
         try {
@@ -213,13 +357,48 @@ public class KVStore {
     }
 
     public String put(String key, String value) throws IOException, NoServerAliveException {
+        if (isBinary)
+            return communicateBinary(Action.put, key, value);
         return communicate(key + " " + value, Action.put);
     }
 
     public String get(String key) throws IOException, NoServerAliveException {
+        if (isBinary)
+            return communicateBinary(Action.get, key, null);
         return communicate(key, Action.get);
     }
 
+    /**
+     * Use the binary protocol for put, get and delete, which keeps values with line breaks intact
+     *
+     * @param isBinary
+     */
+    public void setBinary(boolean isBinary) {
+        this.isBinary = isBinary;
+    }
+
+    /**
+     * Put all pairs with pipelined requests, for bulk ingest
+     *
+     * @param pairs
+     * @return the responses in the iteration order of pairs, null where no server answered
+     */
+    public List<String> putAll(Map<String, String> pairs) throws IOException, NoServerAliveException {
+        var keys = new ArrayList<String>();
+        pairs.forEach((key, value) -> keys.add(key + " " + value));
+        return pipeline(keys, Action.put);
+    }
+
+    /**
+     * Get all keys with pipelined requests
+     *
+     * @param keys
+     * @return the responses in the order of keys, null where no server answered
+     */
+    public List<String> getAll(List<String> keys) throws IOException, NoServerAliveException {
+        return pipeline(keys, Action.get);
+    }
+
     public void subscribe(String key) throws IOException {
         // check if there is connection
         var myServer = metaData.getServerData().stream().findAny();
@@ -340,6 +519,8 @@ public class KVStore {
     }
 
     public String delete(String key) throws IOException, NoServerAliveException {
+        if (isBinary)
+            return communicateBinary(Action.delete, key, null);
         return communicate(key, Action.delete);
     }
 
@@ -0,0 +1,142 @@
+package de.tum.i13.server.kv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha). Cached keys are either in recent (seen once lately, T1) or in
+ * frequent (seen at least twice, T2). Displaced keys are remembered without their value in the ghost lists
+ * recentGhosts (B1) and frequentGhosts (B2). A miss on a ghost shows which list was too small, so the target size of
+ * recent moves towards recency or frequency while the workload changes, e.g. between ingest and read heavy phases.
+ * <p>
+ * Every list is a LinkedHashSet in LRU order, its first key is the least recently used one. The lists are bounded
+ * in keys, with a byte budget by the number of keys of the current average weight that fit (entryLimit).
+ */
+class ARCCache extends Cache {
+    private final LinkedHashSet<String> recent = new LinkedHashSet<>();
+    private final LinkedHashSet<String> frequent = new LinkedHashSet<>();
+    private final LinkedHashSet<String> recentGhosts = new LinkedHashSet<>();
+    private final LinkedHashSet<String> frequentGhosts = new LinkedHashSet<>();
+    //target size of recent
+    private int target = 0;
+
+    ARCCache(int size, StorageEngine disk) {
+        this(size, 0, disk);
+    }
+
+    ARCCache(int size, long maxBytes, StorageEngine disk) {
+        super(size, maxBytes, disk);
+    }
+
+    @Override
+    String get(String key) throws FileNotFoundException {
+        var cached = lookup(key);
+        if (cached != null) {
+            synchronized (this) {
+                if (recent.remove(key) || frequent.remove(key)) //not displaced meanwhile
+                    frequent.add(key);
+            }
+            return cached;
+        } else {
+            //cache miss
+            String valueFromDisk = load(key);
+            admit(key, valueFromDisk);
+            return valueFromDisk;
+        }
+    }
+
+    @Override
+    KeyStatus put(String key, String value) throws IOException {
+        admit(key, value);
+        return writeThrough(key, value);
+    }
+
+    @Override
+    boolean delete(String key) {
+        forget(key);
+        return deleteThrough(key);
+    }
+
+    @Override
+    synchronized void forget(String key) {
+        evict(key);
+        recent.remove(key);
+        frequent.remove(key);
+        recentGhosts.remove(key);
+        frequentGhosts.remove(key);
+    }
+
+    /**
+     * @return current target size of the recency list
+     */
+    synchronized int target() {
+        return target;
+    }
+
+    private synchronized void admit(String key, String value) {
+        if (!fits(key, value)) {
+            forget(key);
+            return;
+        }
+        var incoming = weigh(key, value);
+        var limit = entryLimit();
+        if (recent.remove(key) || frequent.remove(key)) {
+            frequent.add(key);
+        } else if (recentGhosts.contains(key)) {
+            //recent was too small
+            target = Math.min(limit, target + Math.max(frequentGhosts.size() / recentGhosts.size(), 1));
+            makeRoom(incoming, false);
+            recentGhosts.remove(key);
+            frequent.add(key);
+        } else if (frequentGhosts.contains(key)) {
+            //frequent was too small
+            target = Math.max(0, target - Math.max(recentGhosts.size() / frequentGhosts.size(), 1));
+            makeRoom(incoming, true);
+            frequentGhosts.remove(key);
+            frequent.add(key);
+        } else {
+            var recentHistory = recent.size() + recentGhosts.size();
+            var total = recentHistory + frequent.size() + frequentGhosts.size();
+            if (recentHistory >= limit) {
+                if (recent.size() < limit)
+                    removeFirst(recentGhosts);
+                else
+                    displace(removeFirst(recent));
+            } else if (total >= 2 * limit && !frequentGhosts.isEmpty()) {
+                removeFirst(frequentGhosts);
+            }
+            makeRoom(incoming, false);
+            recent.add(key);
+        }
+        store(key, value);
+    }
+
+    /**
+     * Displace keys of recent or frequent into their ghost lists until the incoming entry fits
+     *
+     * @param incoming           weight of the entry being admitted
+     * @param isFrequentGhostHit the key being admitted was found in frequentGhosts
+     */
+    private void makeRoom(long incoming, boolean isFrequentGhostHit) {
+        while (isFull(incoming) && (!recent.isEmpty() || !frequent.isEmpty())) {
+            if (!recent.isEmpty() && (frequent.isEmpty() || recent.size() > target
+                    || (isFrequentGhostHit && recent.size() == target))) {
+                var key = removeFirst(recent);
+                displace(key);
+                recentGhosts.add(key);
+            } else {
+                var key = removeFirst(frequent);
+                displace(key);
+                frequentGhosts.add(key);
+            }
+        }
+    }
+
+    private static String removeFirst(LinkedHashSet<String> keys) {
+        var iterator = keys.iterator();
+        var key = iterator.next();
+        iterator.remove();
+        return key;
+    }
+}
@@ -0,0 +1,121 @@
+package de.tum.i13.server.kv;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over keys: mightContain never answers false for an added key, so a false lets a get skip the disk.
+ * The k bit positions are derived from one 64 bit hash by double hashing (h1 + i * h2). Thread safe.
+ */
+class BloomFilter {
+    static final int DEFAULT_BITS_PER_KEY = 10; //about 1% false positives
+    private final AtomicLongArray bits;
+    private final int hashes;
+    private final long bitCount;
+
+    private BloomFilter(AtomicLongArray bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.bitCount = (long) bits.length() * Long.SIZE;
+    }
+
+    /**
+     * @param expectedKeys
+     * @param bitsPerKey
+     * @return an empty filter with about 0.6185^bitsPerKey false positives once it holds expectedKeys keys
+     */
+    static BloomFilter create(int expectedKeys, int bitsPerKey) {
+        var bitCount = Math.max(64L, (long) expectedKeys * bitsPerKey);
+        var hashes = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+        return new BloomFilter(new AtomicLongArray((int) ((bitCount + 63) / 64)), hashes);
+    }
+
+    /**
+     * @param keyHashes hash(key) of every key
+     * @return a filter holding the keys of keyHashes
+     */
+    static BloomFilter of(long[] keyHashes, int count, int bitsPerKey) {
+        var filter = create(count, bitsPerKey);
+        for (int i = 0; i < count; i++)
+            filter.add(keyHashes[i]);
+        return filter;
+    }
+
+    void add(String key) {
+        add(hash(key));
+    }
+
+    boolean mightContain(String key) {
+        return mightContain(hash(key));
+    }
+
+    private void add(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            var bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            var word = (int) (bit >>> 6);
+            var mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            var bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes followed by the murmur3 finalizer, so both halves are well mixed
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (var b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Layout: hashes(4) words(4) words * 8 bytes
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(hashes);
+        out.writeInt(bits.length());
+        for (int i = 0; i < bits.length(); i++)
+            out.writeLong(bits.get(i));
+    }
+
+    static BloomFilter readFrom(ByteBuffer buffer) {
+        var hashes = buffer.getInt();
+        var words = new long[buffer.getInt()];
+        for (int i = 0; i < words.length; i++)
+            words[i] = buffer.getLong();
+        return new BloomFilter(new AtomicLongArray(words), hashes);
+    }
+
+    /**
+     * @return size of the filter in bytes
+     */
+    long byteSize() {
+        return bitCount / 8;
+    }
+}
@@ -2,20 +2,212 @@ package de.tum.i13.server.kv;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
+/**
+ * Cache in front of a storage engine. Database calls it from many threads at once, only ordering operations on
+ * the same key, so implementations guard their bookkeeping with a lock of the cache (its monitor, or its own lock
+ * like LRUCache) and never hold it during disk access. theCache is concurrent, a hit may read it without the lock.
+ * <p>
+ * The capacity is either size keys or, with maxBytes, a byte budget where every entry weighs its key and value
+ * bytes plus ENTRY_OVERHEAD. Implementations add and remove entries with store and evict, which keep the weight,
+ * and displace entries while isFull. An update that makes a cached value larger may exceed the budget by the
+ * difference until the next key is admitted.
+ * <p>
+ * Keys found missing are remembered in a NegativeCache: implementations read the disk with load, write with
+ * writeThrough and delete with deleteThrough, which keep it up to date.
+ * <p>
+ * Hits and misses are counted by lookup, the disk reads of misses by load, and displaced entries by displace in
+ * CacheStats. bytes is kept in both capacity modes, so the memory of the cache is visible either way.
+ */
 abstract class Cache {
+    //map entry, list node and the two String objects of a cached key
+    static final int ENTRY_OVERHEAD = 128;
+    //with a byte budget, size is only an estimate used to dimension the bookkeeping
+    private static final int ESTIMATED_ENTRY_BYTES = 1024;
+    private static final int MIN_MISSING_KEYS = 1024;
+
     final int size;
+    //0 if the capacity is size keys
+    final long maxBytes;
     final Map<String, String> theCache;
-    final Database disk;
-    
-    Cache(int size, Database disk) {
-        this.size = size;
-        this.theCache = new ConcurrentHashMap<>(size); //automatically threadsafe
+    final StorageEngine disk;
+    final NegativeCache missing;
+    final CacheStats stats = new CacheStats();
+    //sum of the weights of all cached entries, in keys or bytes
+    private final AtomicLong weight = new AtomicLong();
+    //keys and values plus ENTRY_OVERHEAD, equal to weight with a byte budget
+    private final AtomicLong bytes = new AtomicLong();
+
+    Cache(int size, StorageEngine disk) {
+        this(size, 0, disk);
+    }
+
+    /**
+     * @param size     number of cached keys, ignored if maxBytes is set
+     * @param maxBytes byte budget of the cache, 0 to count keys
+     * @param disk
+     */
+    Cache(int size, long maxBytes, StorageEngine disk) {
+        this.maxBytes = maxBytes;
+        this.size = maxBytes > 0 ? (int) Math.max(16, Math.min(1 << 20, maxBytes / ESTIMATED_ENTRY_BYTES)) : size;
+        this.theCache = new ConcurrentHashMap<>(this.size); //automatically threadsafe
         this.disk = disk;
+        this.missing = new NegativeCache(Math.max(this.size, MIN_MISSING_KEYS));
+    }
+
+    /**
+     * @param memory e.g. 512m, 64k, 2g or plain bytes, 0 or null for none
+     * @return memory in bytes
+     */
+    static long parseBytes(String memory) {
+        if (memory == null || memory.isBlank())
+            return 0;
+        var unit = Character.toLowerCase(memory.charAt(memory.length() - 1));
+        var factor = unit == 'k' ? 1L << 10 : unit == 'm' ? 1L << 20 : unit == 'g' ? 1L << 30 : 1;
+        var number = factor == 1 ? memory : memory.substring(0, memory.length() - 1);
+        try {
+            return Long.parseLong(number.trim()) * factor;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown cache memory: " + memory);
+        }
+    }
+
+    /**
+     * @return keys in counting mode, bytes with a byte budget
+     */
+    long capacity() {
+        return maxBytes > 0 ? maxBytes : size;
+    }
+
+    /**
+     * @return how many entries fit, size or with a byte budget the number of entries of the current average weight
+     */
+    int entryLimit() {
+        var count = theCache.size();
+        if (maxBytes == 0 || count == 0)
+            return size;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes * count / Math.max(1, weight.get())));
+    }
+
+    long weigh(String key, String value) {
+        return maxBytes > 0 ? ENTRY_OVERHEAD + key.length() + value.length() : 1;
+    }
+
+    long weight() {
+        return weight.get();
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @param incoming weight of the entry about to be added
+     * @return true if an entry has to be displaced before it fits
+     */
+    boolean isFull(long incoming) {
+        return !theCache.isEmpty() && weight.get() + incoming > capacity();
+    }
+
+    /**
+     * @return false if key and value are larger than the whole budget and must not be cached
+     */
+    boolean fits(String key, String value) {
+        return weigh(key, value) <= capacity();
+    }
+
+    /**
+     * @param key
+     * @return cached value of key, null on a miss
+     */
+    String lookup(String key) {
+        var cached = theCache.get(key);
+        (cached != null ? stats.hits : stats.misses).increment();
+        return cached;
+    }
+
+    /**
+     * Read key from disk, unless it is known to be missing
+     *
+     * @param key
+     * @return
+     * @throws FileNotFoundException
+     */
+    String load(String key) throws FileNotFoundException {
+        if (missing.contains(key)) {
+            stats.missingHits.increment();
+            throw new MissingKeyException(key);
+        }
+        var start = System.nanoTime();
+        try {
+            return disk.get(key);
+        } catch (FileNotFoundException e) {
+            missing.add(key);
+            throw e;
+        } finally {
+            stats.loads.increment();
+            stats.loadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    KeyStatus writeThrough(String key, String value) throws IOException {
+        missing.remove(key);
+        return disk.put(key, value);
+    }
+
+    boolean deleteThrough(String key) {
+        var isDeleted = disk.delete(key);
+        missing.add(key);
+        return isDeleted;
+    }
+
+    void store(String key, String value) {
+        var old = theCache.put(key, value);
+        weight.addAndGet(weigh(key, value) - (old == null ? 0 : weigh(key, old)));
+        bytes.addAndGet(sizeOf(key, value) - (old == null ? 0 : sizeOf(key, old)));
+    }
+
+    void evict(String key) {
+        var old = theCache.remove(key);
+        if (old != null) {
+            weight.addAndGet(-weigh(key, old));
+            bytes.addAndGet(-sizeOf(key, old));
+        }
+    }
+
+    /**
+     * Evict key to make room for another one
+     *
+     * @param key
+     */
+    void displace(String key) {
+        evict(key);
+        stats.evictions.increment();
+    }
+
+    private static long sizeOf(String key, String value) {
+        return ENTRY_OVERHEAD + key.length() + value.length();
+    }
+
+    /**
+     * @param limit
+     * @return up to limit cached keys, the hottest first if the strategy keeps an order
+     */
+    List<String> hotKeys(int limit) {
+        return theCache.keySet().stream().limit(limit).collect(Collectors.toList());
     }
 
+    /**
+     * drop key from the cache only, the disk keeps it
+     * @param key
+     */
+    abstract void forget(String key);
+
     /**
      * get value to key, if not in cache it will be loaded from disk and replaced in cache
      * @param key
@@ -39,4 +231,18 @@ abstract class Cache {
      * @return
      */
     abstract boolean delete(String key);
-}
\ No newline at end of file
+
+    /**
+     * Thrown for keys known to be missing. Without a stack trace, a hot miss should not cost more than the lookup
+     */
+    static class MissingKeyException extends FileNotFoundException {
+        MissingKeyException(String key) {
+            super(key);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package de.tum.i13.server.kv;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one Cache. LongAdders, so counting a hit costs no contended write on the read path.
+ */
+class CacheStats {
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    //misses answered by the NegativeCache without disk access
+    final LongAdder missingHits = new LongAdder();
+    //entries displaced to make room, not deletes
+    final LongAdder evictions = new LongAdder();
+    final LongAdder loads = new LongAdder();
+    final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * @return hits / (hits + misses), 0 before the first get
+     */
+    double hitRatio() {
+        var hits = this.hits.sum();
+        var total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return mean time of a disk read on a miss in microseconds
+     */
+    double averageLoadMicros() {
+        var loads = this.loads.sum();
+        return loads == 0 ? 0 : loadNanos.sum() / 1000.0 / loads;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d hitRatio=%.4f missingHits=%d evictions=%d loads=%d avgLoadMicros=%.1f",
+                hits.sum(), misses.sum(), hitRatio(), missingHits.sum(), evictions.sum(), loads.sum(),
+                averageLoadMicros());
+    }
+}
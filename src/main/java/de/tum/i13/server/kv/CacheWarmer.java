@@ -0,0 +1,132 @@
+package de.tum.i13.server.kv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Refills the cache after a restart. Once started, the hot keys of the cache are written to SNAPSHOT in the data
+ * directory every interval, one per line, and once more on close. start reads the keys of the last snapshot again by
+ * PREFETCHERS background threads while the server already serves requests, so the first clients find them cached.
+ * Keys received from another server can be prefetched the same way, without snapshots, but only into the room the
+ * cache has left: they must not displace the keys clients use.
+ * <p>
+ * A prefetch is an ordinary get, it takes the stripe lock of its key and goes through the admission of the cache.
+ */
+class CacheWarmer {
+    private static final Logger logger = Logger.getLogger(CacheWarmer.class.getName());
+    static final String SNAPSHOT = "hotkeys.snapshot";
+    private static final int PREFETCHERS = 4;
+
+    private final Database database;
+    private final Path snapshot;
+    private final ExecutorService prefetchers = Executors.newFixedThreadPool(PREFETCHERS, daemon("cache-prefetcher"));
+    private final ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(
+            daemon("hot-key-snapshot"));
+    private volatile boolean started = false;
+
+    /**
+     * @param database the cache of this database is warmed
+     * @param datadir  directory of the snapshot
+     */
+    CacheWarmer(Database database, Path datadir) {
+        this.database = database;
+        this.snapshot = datadir.resolve(SNAPSHOT);
+    }
+
+    /**
+     * Prefetch the keys of the last snapshot in the background and take a snapshot every intervalSeconds
+     *
+     * @param intervalSeconds
+     * @return number of keys read from the snapshot
+     */
+    int start(long intervalSeconds) {
+        started = true;
+        snapshotter.scheduleWithFixedDelay(this::saveQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        if (!Files.exists(snapshot))
+            return 0;
+        try {
+            var keys = Files.readAllLines(snapshot, StandardCharsets.UTF_8);
+            logger.info(String.format("Warming the cache with %d hot keys of %s", keys.size(), snapshot));
+            prefetch(keys, false);
+            return keys.size();
+        } catch (IOException e) {
+            logger.warning("Unable to read the hot key snapshot " + snapshot + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Read keys in the background, at most as many as the cache holds, split among the prefetchers
+     *
+     * @param keys          hottest first
+     * @param onlyFreeRoom  stop once the cache is full instead of displacing its entries
+     */
+    void prefetch(Collection<String> keys, boolean onlyFreeRoom) {
+        var limit = onlyFreeRoom ? database.cacheFreeRoom() : database.cacheEntryLimit();
+        var limited = keys.stream().limit(limit).toArray(String[]::new);
+        for (int i = 0; i < PREFETCHERS; i++) {
+            var first = i;
+            prefetchers.execute(() -> {
+                for (int k = first; k < limited.length; k += PREFETCHERS) {
+                    //clients fill the cache meanwhile as well
+                    if (onlyFreeRoom && database.cacheFreeRoom() == 0)
+                        return;
+                    try {
+                        database.get(limited[k]);
+                    } catch (FileNotFoundException ignored) {
+                        //deleted since the snapshot
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Replace the snapshot by the current hot keys
+     *
+     * @throws IOException
+     */
+    void save() throws IOException {
+        var keys = database.hotKeys();
+        var temp = snapshot.resolveSibling(SNAPSHOT + ".tmp");
+        Files.write(temp, keys, StandardCharsets.UTF_8);
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stop prefetching and write a last snapshot if started
+     */
+    void close() {
+        snapshotter.shutdown();
+        prefetchers.shutdownNow();
+        if (started)
+            saveQuietly();
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Unable to write the hot key snapshot " + snapshot + ": " + e.getMessage());
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            var t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package de.tum.i13.server.kv;
+
+/**
+ * Approximate access frequency of keys in a fixed amount of memory. Each of the DEPTH rows counts the key in one of
+ * its counters, the estimate is the smallest of them; collisions can only make it too high. Counters saturate at 15
+ * and all of them are halved once sampleSize increments were recorded, so the estimate follows the recent workload.
+ */
+class CountMinSketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L};
+
+    private final byte[][] counters = new byte[DEPTH][];
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    /**
+     * @param expectedKeys number of keys whose frequency should be told apart, e.g. the cache size
+     */
+    CountMinSketch(int expectedKeys) {
+        var width = Integer.highestOneBit(Math.max(expectedKeys, 8) - 1) << 1;
+        for (int i = 0; i < DEPTH; i++)
+            counters[i] = new byte[width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * Math.max(expectedKeys, 8);
+    }
+
+    void increment(String key) {
+        var hash = key.hashCode();
+        var added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            var index = index(hash, i);
+            if (counters[i][index] < MAX_COUNT) {
+                counters[i][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize)
+            reset();
+    }
+
+    int frequency(String key) {
+        var hash = key.hashCode();
+        var frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++)
+            frequency = Math.min(frequency, counters[i][index(hash, i)]);
+        return frequency;
+    }
+
+    private int index(int hash, int row) {
+        var h = (hash + SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 32;
+        return (int) h & mask;
+    }
+
+    private void reset() {
+        for (var row : counters)
+            for (int i = 0; i < row.length; i++)
+                row[i] >>= 1;
+        additions /= 2;
+    }
+}
@@ -1,57 +1,192 @@
 package de.tum.i13.server.kv;
 
-import java.io.File;
+import de.tum.i13.shared.Config;
+
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Objects;
-import java.util.Scanner;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Stream;
-
-import static java.util.stream.Collectors.toList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Used to decide whether to send put_update or not
+ * Cache and storage engines of a server. Operations lock only the stripe of their key: gets share it, puts and deletes
+ * have it exclusively, so requests for different keys run in parallel and a get never caches a value older than
+ * a put of the same key. The cache and the engines are thread safe on their own.
+ * <p>
+ * The cache can be replaced at runtime, while all stripes are locked, so no operation sees two caches.
  */
-enum KeyStatus {
-    Updated, Created
-}
-
 public class Database {
-    private final File storageFile;
-    private final Cache cache;
-    private final String dataPath;
-    private final Collection<String> keysReplicated = new CopyOnWriteArrayList<>();
-    
+    private static final int STRIPES = 64;
+    private static final List<String> STRATEGIES = List.of("FIFO", "LRU", "LFU", "TINYLFU", "ARC");
+    //only replaced with every stripe locked
+    private volatile Cache cache;
+    private volatile String strategy;
+    private final StorageEngine engine;
+    //null if the tier is off
+    private final OffHeapCache offHeap;
+    private final WriteBackStore writeBack;
+    private final CacheWarmer warmer;
+    private final ReplicaStore replicas;
+    //operations on the same key are ordered by its stripe, different keys only share a stripe by chance
+    private final ReadWriteLock[] stripes = new ReadWriteLock[STRIPES];
+
+    /**
+     * Database with the defaults of the server options for everything else
+     *
+     * @param cacheSize number of cached keys
+     * @param strategy  cache displacement strategy, FIFO, LRU, LFU, TINYLFU or ARC
+     * @param datadir   data directory
+     */
     public Database(int cacheSize, String strategy, Path datadir) {
-        if (strategy == null)
+        this(options(cacheSize, strategy, datadir));
+    }
+
+    private static Config options(int cacheSize, String strategy, Path datadir) {
+        var args = new ArrayList<>(List.of("-c", String.valueOf(cacheSize),
+                "-d", String.valueOf(datadir == null ? Path.of("data/") : datadir)));
+        if (strategy != null)
+            args.addAll(List.of("-s", strategy));
+        return Config.parseCommandlineArgs(args.toArray(new String[0]));
+    }
+
+    /**
+     * @param cfg server options: cache size, strategy and memory (-c, -s, -cm), data directory (-d), storage engine
+     *            (-e) with its fsync policy (-fs) and compression (-z), off heap cache (-l2) and write back mode (-wb)
+     */
+    public Database(Config cfg) {
+        var strategy = cfg.cachedisplacement;
+        var cacheSize = cfg.cachesize;
+        var datadir = cfg.dataDir;
+        var engine = cfg.storageengine;
+        if (strategy == null || !STRATEGIES.contains(strategy))
             strategy = "FIFO";
         if (cacheSize == 0)
             cacheSize = 100;
         if (datadir == null)
             datadir = Path.of("data/");
+        try {
+            var storage = WriteBackStore.wrap(
+                    StorageEngine.open(engine, datadir, FsyncPolicy.parse(cfg.fsync), ValueCodec.parse(cfg.compression)),
+                    cfg.writeback);
+            this.writeBack = storage instanceof WriteBackStore ? (WriteBackStore) storage : null;
+            var offHeapBytes = Cache.parseBytes(cfg.offheapmemory);
+            this.offHeap = offHeapBytes > 0 ? new OffHeapCache(storage, offHeapBytes) : null;
+            this.engine = offHeap != null ? offHeap : storage;
+            this.replicas = new ReplicaStore(this.engine, datadir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open the " + engine + " storage engine in " + datadir, e);
+        }
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new ReentrantReadWriteLock();
+        this.strategy = strategy;
+        this.cache = newCache(strategy, cacheSize, Cache.parseBytes(cfg.cachememory));
+        this.warmer = new CacheWarmer(this, datadir);
+    }
+
+    private Cache newCache(String strategy, int cacheSize, long maxBytes) {
         switch (strategy) {
             case "LFU":
-                cache = new LFUCache(cacheSize, this);
-                break;
+                return new LFUCache(cacheSize, maxBytes, engine);
             case "LRU":
-                cache = new LRUCache(cacheSize, this);
-                break;
+                return new LRUCache(cacheSize, maxBytes, engine);
+            case "TINYLFU":
+                return new TinyLFUCache(cacheSize, maxBytes, engine);
+            case "ARC":
+                return new ARCCache(cacheSize, maxBytes, engine);
             default:
-                cache = new FIFOCache(cacheSize, this);
+                return new FIFOCache(cacheSize, maxBytes, engine);
         }
+    }
+
+    /**
+     * Replace the cache by an empty one with another strategy or capacity, without a restart. The new cache starts
+     * cold and with new counters, the disk is always up to date so no entry has to be moved.
+     *
+     * @param strategy FIFO, LRU, LFU, TINYLFU or ARC, null to keep the current one
+     * @param capacity number of keys or a byte budget like 512m, null to keep the current one
+     * @throws IllegalArgumentException for an unknown strategy or a capacity that is not positive
+     */
+    public void reconfigureCache(String strategy, String capacity) {
+        if (strategy != null && !STRATEGIES.contains(strategy))
+            throw new IllegalArgumentException("Unknown cache strategy: " + strategy);
+        var current = cache;
+        var cacheSize = current.size;
+        var maxBytes = current.maxBytes;
+        if (capacity != null) {
+            var inBytes = !Character.isDigit(capacity.charAt(capacity.length() - 1));
+            cacheSize = inBytes ? current.size : Integer.parseInt(capacity);
+            maxBytes = inBytes ? Cache.parseBytes(capacity) : 0;
+            if (cacheSize <= 0 || (inBytes && maxBytes <= 0))
+                throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        var replacement = newCache(strategy != null ? strategy : this.strategy, cacheSize, maxBytes);
+        for (var stripe : stripes)
+            stripe.writeLock().lock();
         try {
-            Files.createDirectories(Path.of(datadir.toString()));
-        } catch (IOException e) {
-            e.printStackTrace();
+            cache = replacement;
+            if (strategy != null)
+                this.strategy = strategy;
+        } finally {
+            for (var stripe : stripes)
+                stripe.writeLock().unlock();
         }
-        storageFile = new File(datadir.toString());
-        dataPath = datadir.toString();
+    }
+
+    /**
+     * Warm the cache with the hot keys saved before the last shutdown and save them every snapshotSeconds from now on
+     *
+     * @param snapshotSeconds
+     */
+    public void startWarmer(long snapshotSeconds) {
+        warmer.start(snapshotSeconds);
+    }
+
+    /**
+     * Read keys into the room the cache has left in the background, e.g. keys received from another server. Cached
+     * keys are not displaced
+     *
+     * @param keys
+     */
+    public void warm(Collection<String> keys) {
+        warmer.prefetch(keys, true);
+    }
+
+    List<String> hotKeys() {
+        var cache = this.cache;
+        return cache.hotKeys(cache.entryLimit());
+    }
+
+    int cacheEntryLimit() {
+        return cache.entryLimit();
+    }
+
+    /**
+     * @return how many more entries fit into the cache without displacing one
+     */
+    int cacheFreeRoom() {
+        var cache = this.cache;
+        return Math.max(0, cache.entryLimit() - cache.theCache.size());
+    }
+
+    /**
+     * @return one line of key=value pairs: the cache and its counters, the off heap cache, write back and Bloom filters
+     */
+    public String getStats() {
+        var cache = this.cache;
+        var stats = new StringBuilder(String.format("strategy=%s entries=%d capacity=%d unit=%s bytes=%d %s",
+                strategy, cache.theCache.size(), cache.capacity(), cache.maxBytes > 0 ? "bytes" : "keys",
+                cache.bytes(), cache.stats));
+        if (offHeap != null)
+            stats.append(String.format(" l2Hits=%d l2Misses=%d l2Bytes=%d", offHeap.getHits(), offHeap.getMisses(),
+                    offHeap.usedBytes()));
+        if (writeBack != null)
+            stats.append(" dirtyBytes=").append(writeBack.getDirtyBytes());
+        return stats.append(' ').append(getFilterMetrics()).toString();
     }
 
     /**
@@ -59,9 +194,14 @@ public class Database {
      * @param key
      * @return
      */
-    synchronized boolean deleteFromDisk(String key) {
-        var f = new File( dataPath + "/" + key + ".txt");
-        return f.delete();
+    boolean deleteFromDisk(String key) {
+        var lock = lockFor(key).writeLock();
+        lock.lock();
+        try {
+            return engine.delete(key);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -70,20 +210,16 @@ public class Database {
      * @return
      * @throws FileNotFoundException
      */
-    synchronized String getFromDisk(String key) throws FileNotFoundException {
-        var value = new StringBuilder();
-        Scanner sc;
-        if (keysReplicated.contains(key)) {
-            sc = new Scanner(new File(dataPath + "/" + key + ".txt.replica"));
-        } else {
-            sc = new Scanner(new File(dataPath + "/" + key + ".txt"));
-        }
-        value.append(sc.nextLine());
-        while (sc.hasNextLine()) {
-            value.append("\n").append(sc.nextLine());
+    String getFromDisk(String key) throws FileNotFoundException {
+        var lock = lockFor(key).readLock();
+        lock.lock();
+        try {
+            if (replicas.contains(key))
+                return replicas.get(key);
+            return engine.get(key);
+        } finally {
+            lock.unlock();
         }
-        sc.close();
-        return value.toString();
     }
 
     /**
@@ -94,29 +230,69 @@ public class Database {
      * @return
      * @throws IOException
      */
-    synchronized public KeyStatus put(String key, String value) throws IOException {
-        return cache.put(key, value);
+    public KeyStatus put(String key, String value) throws IOException {
+        var lock = lockFor(key).writeLock();
+        lock.lock();
+        try {
+            return cache.put(key, value);
+        } finally {
+            lock.unlock();
+        }
     }
-    
+
     /**
-     * get value to key
+     * get value to key. Replicated keys are read from the replica namespace
      *
      * @param key
      * @return
      * @throws FileNotFoundException
      */
-    synchronized public String get(String key) throws FileNotFoundException {
-        return cache.get(key);
+    public String get(String key) throws FileNotFoundException {
+        var lock = lockFor(key).readLock();
+        lock.lock();
+        try {
+            if (replicas.contains(key))
+                return replicas.get(key);
+            return cache.get(key);
+        } finally {
+            lock.unlock();
+        }
     }
-    
+
     /**
      * delete key, value pair
      *
      * @param key
      * @return
      */
-    synchronized public boolean delete(String key) {
-        return cache.delete(key);
+    public boolean delete(String key) {
+        var lock = lockFor(key).writeLock();
+        lock.lock();
+        try {
+            return cache.delete(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * put key value pair without caching it, e.g. keys transferred from another server, which would displace the
+     * keys this server's clients use. An older cached value of key is dropped
+     *
+     * @param key
+     * @param value
+     * @return
+     * @throws IOException
+     */
+    public KeyStatus putUncached(String key, String value) throws IOException {
+        var lock = lockFor(key).writeLock();
+        lock.lock();
+        try {
+            cache.forget(key);
+            return cache.writeThrough(key, value);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -126,57 +302,114 @@ public class Database {
      * @return
      * @throws IOException
      */
-    synchronized KeyStatus putToDisk(String key, String value) throws IOException {
-        var keyFile = new File(dataPath + "/" + key + ".txt");
-        var isFileNotExist = keyFile.createNewFile();
-        var fileWriter = new FileWriter(keyFile);
-        fileWriter.write(value);
-        fileWriter.flush();
-        fileWriter.close();
-        return isFileNotExist ? KeyStatus.Created : KeyStatus.Updated;
+    KeyStatus putToDisk(String key, String value) throws IOException {
+        var lock = lockFor(key).writeLock();
+        lock.lock();
+        try {
+            cache.missing.remove(key);
+            return engine.put(key, value);
+        } finally {
+            lock.unlock();
+        }
     }
-    
+
     /**
      * Return all our actual key on the disk
      *
      * @return
      */
-    synchronized public List<String> keySet() {
-        //we need to remove file extension as we want only key name
-        return Stream.of(Objects.requireNonNull(storageFile.listFiles())).filter(file -> file.getName().endsWith(".txt")).map(file ->
-                file.getName().substring(0, file.getName().length() - 4)).collect(toList());
-    }
-    
-    /*
-     * These 2 replica methods are almost identical to the putToDisk and deleteFromDisk method, with different form of files suffix.
-     * I just dont want to change those 2 crucial methods
-     */
-    synchronized public void putReplica(String key, String value) throws IOException {
-        var keyFile = new File(dataPath + "/" + key + ".txt.replica");
-        var fileWriter = new FileWriter(keyFile);
-        fileWriter.write(value);
-        fileWriter.flush();
-        fileWriter.close();
-        keysReplicated.add(key);
-    }
-    
-    @SuppressWarnings("unused")
-    synchronized public void clearAllReplica() {
-        for (var key : keysReplicated) {
-            deleteReplica(key);
+    public List<String> keySet() {
+        return engine.keySet();
+    }
+
+    /**
+     * Return our keys whose hash is in [firstHash, lastHash]
+     *
+     * @param firstHash
+     * @param lastHash
+     * @return
+     */
+    public List<String> keySet(BigInteger firstHash, BigInteger lastHash) {
+        return engine.scan(firstHash, lastHash);
+    }
+
+    public void putReplica(String key, String value) throws IOException {
+        putReplica(ReplicaStore.UNKNOWN_SOURCE, key, value);
+    }
+
+    /**
+     * @param source server the replica belongs to, e.g. 127.0.0.1:5153
+     * @param key
+     * @param value
+     * @throws IOException
+     */
+    public void putReplica(String source, String key, String value) throws IOException {
+        var lock = lockFor(key).writeLock();
+        lock.lock();
+        try {
+            replicas.put(source, key, value);
+        } finally {
+            lock.unlock();
         }
-        keysReplicated.clear();
     }
-    
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    synchronized public void deleteReplica(String key) {
-        var f = new File(dataPath + "/" + key + ".txt.replica");
-        f.delete();
-        keysReplicated.remove(key);
+
+    @SuppressWarnings("unused")
+    public void clearAllReplica() {
+        replicas.dropAll();
     }
-}
 
+    /**
+     * Drop every replica of one server, e.g. before it sends all of its data again
+     *
+     * @param source
+     */
+    public void dropReplicasOf(String source) {
+        replicas.drop(source);
+    }
 
+    public void deleteReplica(String key) {
+        var lock = lockFor(key).writeLock();
+        lock.lock();
+        try {
+            replicas.delete(key);
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /**
+     * @return how the Bloom filters of the storage engines answered lookups of missing keys
+     */
+    public FilterMetrics getFilterMetrics() {
+        return FilterMetrics.sum(engine.filterMetrics(), replicas.filterMetrics());
+    }
+
+    private ReadWriteLock lockFor(String key) {
+        var h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
 
+    /**
+     * Write the puts and deletes buffered in write back mode to disk
+     */
+    public void flush() {
+        try {
+            engine.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * Persist everything the storage engine still holds in memory, called on shutdown
+     */
+    public void close() {
+        warmer.close();
+        try {
+            engine.close();
+            replicas.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -8,48 +8,59 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 class FIFOCache extends Cache {
     private final Queue<String> queue = new ConcurrentLinkedQueue<>();
     
-    public FIFOCache(int size, Database store) {
+    public FIFOCache(int size, StorageEngine store) {
         super(size, store);
     }
 
+    FIFOCache(int size, long maxBytes, StorageEngine store) {
+        super(size, maxBytes, store);
+    }
+
     String get(String key) throws FileNotFoundException {
-        if (theCache.containsKey(key)) {
-            return theCache.get(key);
+        var cached = lookup(key);
+        if (cached != null) {
+            return cached;
         }
         //cache miss
-        String valueFromDisk = disk.getFromDisk(key);
-        while (theCache.size() >= size)
-            resize();
-        queue.add(key);
-        theCache.put(key, valueFromDisk);
+        String valueFromDisk = load(key);
+        admit(key, valueFromDisk);
         return valueFromDisk;
     }
     
     KeyStatus put(String key, String value) throws IOException {
-        //noinspection IfStatementWithIdenticalBranches
-        if (theCache.containsKey(key)) {
-            theCache.put(key, value);
-        } else {
-            //cache miss
-            while (theCache.size() >= size)
-                resize();
-            queue.add(key);
-            theCache.put(key, value);
-        }
-        return disk.putToDisk(key, value);
+        admit(key, value);
+        return writeThrough(key, value);
     }
     
     @Override
     boolean delete(String key) {
-        theCache.remove(key);
-        queue.remove(key);
-        return disk.deleteFromDisk(key);
+        forget(key);
+        return deleteThrough(key);
         
     }
 
+    @Override
+    synchronized void forget(String key) {
+        evict(key);
+        queue.remove(key);
+    }
+
+    private synchronized void admit(String key, String value) {
+        if (!fits(key, value)) {
+            forget(key);
+            return;
+        }
+        if (!theCache.containsKey(key)) {
+            while (isFull(weigh(key, value)))
+                resize();
+            queue.add(key);
+        }
+        store(key, value);
+    }
+
     private void resize() {
         //cache full
         var keyToRemove = queue.remove(); //guaranteed to return due to logic
-        theCache.remove(keyToRemove);
+        displace(keyToRemove);
     }
 }
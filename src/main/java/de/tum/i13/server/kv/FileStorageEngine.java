@@ -0,0 +1,128 @@
+package de.tum.i13.server.kv;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.Scanner;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The original storage: keys are file names ending with the suffix (.txt), values are the file content.
+ * <p>
+ * Values of at least the codec's threshold are written compressed, shorter ones stay plain text.
+ * <p>
+ * The keys are kept in a KeyIndex, checkpointed on close. The checkpoint is removed when it is loaded, so after a
+ * crash the index is rebuilt from the directory listing once.
+ */
+class FileStorageEngine implements StorageEngine {
+    static final String SUFFIX = ".txt";
+    //replicas used to live next to the keys with this suffix, ReplicaStore moves them to their own namespace
+    static final String REPLICA_SUFFIX = ".txt.replica";
+    private static final String CHECKPOINT_SUFFIX = ".index";
+    private final File storageFile;
+    private final String dataPath;
+    private final Path checkpoint;
+    private final KeyIndex index;
+    private final ValueCodec codec;
+
+    FileStorageEngine(Path datadir) throws IOException {
+        this(datadir, ValueCodec.NONE);
+    }
+
+    FileStorageEngine(Path datadir, ValueCodec codec) throws IOException {
+        Files.createDirectories(datadir);
+        this.storageFile = datadir.toFile();
+        this.dataPath = datadir.toString();
+        this.checkpoint = datadir.resolve("keys" + SUFFIX + CHECKPOINT_SUFFIX);
+        this.codec = codec;
+        var loaded = KeyIndex.load(checkpoint);
+        Files.deleteIfExists(checkpoint);
+        this.index = loaded != null ? loaded : new KeyIndex(listKeys());
+    }
+
+    @Override
+    public String get(String key) throws FileNotFoundException {
+        //the index knows every stored key, so a miss does not have to open a file
+        if (!index.contains(key))
+            throw new FileNotFoundException(key);
+        byte[] stored;
+        try {
+            stored = Files.readAllBytes(file(key).toPath());
+        } catch (IOException e) {
+            throw new FileNotFoundException(key);
+        }
+        var value = new StringBuilder();
+        var sc = new Scanner(ValueCodec.decode(stored));
+        value.append(sc.nextLine());
+        while (sc.hasNextLine()) {
+            value.append("\n").append(sc.nextLine());
+        }
+        sc.close();
+        return value.toString();
+    }
+
+    @Override
+    public KeyStatus put(String key, String value) throws IOException {
+        var keyFile = file(key);
+        var isFileNotExist = keyFile.createNewFile();
+        Files.write(keyFile.toPath(), codec.encode(value));
+        index.add(key);
+        return isFileNotExist ? KeyStatus.Created : KeyStatus.Updated;
+    }
+
+    @Override
+    public boolean delete(String key) {
+        var isDeleted = file(key).delete();
+        if (isDeleted)
+            index.remove(key);
+        return isDeleted;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return index.contains(key);
+    }
+
+    /**
+     * @return all keys in hash order
+     */
+    @Override
+    public List<String> keySet() {
+        return index.keys();
+    }
+
+    @Override
+    public List<String> scan(BigInteger firstHash, BigInteger lastHash) {
+        return index.range(firstHash, lastHash);
+    }
+
+    @Override
+    public StorageEngine openNamespace(String name) throws IOException {
+        return new FileStorageEngine(Path.of(dataPath).resolve(name), codec);
+    }
+
+    /**
+     * Every put is already in its own file, only the key index is checkpointed
+     */
+    @Override
+    public void close() throws IOException {
+        index.checkpoint(checkpoint);
+    }
+
+    private List<String> listKeys() {
+        //we need to remove file extension as we want only key name
+        return Stream.of(Objects.requireNonNull(storageFile.listFiles())).filter(file -> file.getName().endsWith(SUFFIX)).map(file ->
+                file.getName().substring(0, file.getName().length() - SUFFIX.length())).collect(toList());
+    }
+
+    private File file(String key) {
+        return new File(dataPath + "/" + key + SUFFIX);
+    }
+}
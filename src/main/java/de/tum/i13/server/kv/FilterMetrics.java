@@ -0,0 +1,59 @@
+package de.tum.i13.server.kv;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how Bloom filters answered lookups of keys that turned out to be missing: negatives were answered from
+ * memory, false positives still went to the disk. The false positive rate is the share of the missing keys
+ * that were not caught by the filter.
+ */
+public class FilterMetrics {
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    void negative() {
+        negatives.increment();
+    }
+
+    void falsePositive() {
+        falsePositives.increment();
+    }
+
+    public long getNegatives() {
+        return negatives.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return false positives / (false positives + negatives), 0 if no missing key was looked up yet
+     */
+    public double getFalsePositiveRate() {
+        var fp = getFalsePositives();
+        var total = fp + getNegatives();
+        return total == 0 ? 0 : (double) fp / total;
+    }
+
+    /**
+     * @param others
+     * @return a snapshot with the counters of all others added up
+     */
+    static FilterMetrics sum(FilterMetrics... others) {
+        var sum = new FilterMetrics();
+        for (var other : others) {
+            if (other == null)
+                continue;
+            sum.negatives.add(other.getNegatives());
+            sum.falsePositives.add(other.getFalsePositives());
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("negatives=%d falsePositives=%d falsePositiveRate=%.4f", getNegatives(),
+                getFalsePositives(), getFalsePositiveRate());
+    }
+}
@@ -0,0 +1,46 @@
+package de.tum.i13.server.kv;
+
+/**
+ * When a WriteAheadLog forces its writes to the disk: ALWAYS before a write is acknowledged, every interval
+ * milliseconds, or never and the operating system decides when to write back its page cache (OS).
+ */
+public class FsyncPolicy {
+    public static final FsyncPolicy ALWAYS = new FsyncPolicy(0);
+    public static final FsyncPolicy OS = new FsyncPolicy(-1);
+
+    final long intervalMillis;
+
+    private FsyncPolicy(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * @param policy always, os or an interval in milliseconds, e.g. 100
+     * @return
+     */
+    public static FsyncPolicy parse(String policy) {
+        if (policy == null || policy.equalsIgnoreCase("os"))
+            return OS;
+        if (policy.equalsIgnoreCase("always"))
+            return ALWAYS;
+        try {
+            var intervalMillis = Long.parseLong(policy.endsWith("ms") ? policy.substring(0, policy.length() - 2) : policy);
+            return intervalMillis <= 0 ? ALWAYS : new FsyncPolicy(intervalMillis);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown fsync policy: " + policy);
+        }
+    }
+
+    boolean isAlways() {
+        return intervalMillis == 0;
+    }
+
+    boolean isInterval() {
+        return intervalMillis > 0;
+    }
+
+    @Override
+    public String toString() {
+        return isAlways() ? "always" : isInterval() ? intervalMillis + "ms" : "os";
+    }
+}
@@ -0,0 +1,56 @@
+package de.tum.i13.server.kv;
+
+import de.tum.i13.shared.Hash;
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigInteger;
+import java.util.Objects;
+
+/**
+ * Key ordered by its MD5 hash (the ring position), ties are broken by the key itself.
+ * Sorting by hash makes the keys of one server range a contiguous run.
+ */
+class HashedKey implements Comparable<HashedKey> {
+    final BigInteger hash;
+    final String key;
+
+    HashedKey(String key) {
+        this(new Hash(key).md5Value, key);
+    }
+
+    HashedKey(BigInteger hash, String key) {
+        this.hash = hash;
+        this.key = key;
+    }
+
+    /**
+     * @return true if the hash lies in [firstHash, lastHash]
+     */
+    boolean isIn(BigInteger firstHash, BigInteger lastHash) {
+        return hash.compareTo(firstHash) >= 0 && hash.compareTo(lastHash) <= 0;
+    }
+
+    @Override
+    public int compareTo(@NotNull HashedKey o) {
+        var byHash = hash.compareTo(o.hash);
+        return byHash != 0 ? byHash : key.compareTo(o.key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HashedKey)) return false;
+        HashedKey that = (HashedKey) o;
+        return key.equals(that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key);
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
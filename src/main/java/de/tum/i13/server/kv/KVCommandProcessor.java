@@ -2,6 +2,9 @@ package de.tum.i13.server.kv;
 
 import de.tum.i13.server.threadperconnection.ECSCommunicationThread;
 import de.tum.i13.server.threadperconnection.KVServer;
+import de.tum.i13.shared.BinaryProtocol;
+import de.tum.i13.shared.BinaryProtocol.Frame;
+import de.tum.i13.shared.BinaryProtocol.Status;
 import de.tum.i13.shared.ECSProtocol;
 import de.tum.i13.shared.Hash;
 
@@ -42,6 +45,15 @@ public class KVCommandProcessor {
             case "keyrange_read":
                 ret = handleKeyrangeRead();
                 break;
+            case "stats":
+                ret = "stats_success " + database.getStats();
+                if (kvServer.getWorkers() != null)
+                    ret += " " + kvServer.getWorkers();
+                break;
+            case "cache_policy":
+            case "cache_resize":
+                ret = handleCacheConfig(args);
+                break;
             case "login":
                 if (kvServer.getInfo(args[1]) == null) {
                     // command = ECSProtocol.register(args[1],args[2],,);
@@ -61,6 +73,42 @@ public class KVCommandProcessor {
     
         return ret;
     }
+
+    /**
+     * Process a request of the binary protocol, the same as its text command
+     *
+     * @param request frame with an opcode
+     * @return response frame with a Status
+     */
+    public Frame process(Frame request) {
+        if (request.key == null && request.code != BinaryProtocol.KEYRANGE)
+            return Frame.reply(Status.error, null, "missing key");
+        switch (request.code) {
+            case BinaryProtocol.PUT:
+                if (request.value == null)
+                    return Frame.reply(Status.error, null, "missing value");
+                return put(request.key, request.value);
+            case BinaryProtocol.GET:
+                return get(request.key);
+            case BinaryProtocol.DELETE:
+                return delete(request.key);
+            case BinaryProtocol.KEYRANGE:
+                return Frame.reply(Status.keyrange_success, null, kvServer.getServersMetaData().toString());
+            default:
+                return Frame.reply(Status.error, null, "unknown opcode " + request.code);
+        }
+    }
+
+    /**
+     * @param reply
+     * @return reply as a line of the text protocol
+     */
+    private static String toLine(Frame reply) {
+        if (reply.value == null)
+            return reply.toString();
+        //we cant send values with new line
+        return Frame.reply(reply.getStatus(), reply.key, reply.value.replaceAll("\n", "  ")).toString();
+    }
     
     /**
      * handle put command
@@ -71,30 +119,31 @@ public class KVCommandProcessor {
     private String handlePut(String[] args) {
         if (args.length < 2)
             return "error too few arguments for put";
-        else {
-            String key = args[1];
-            if (!kvServer.getServerData().isResponsible(key)) {
-                logger.info(String.format("key: %s not in range of %s to %s", (new Hash(key)), kvServer.getServerData().getFirstHash().toString(16),
-                        kvServer.getServerData().getLastHash().toString(16)));
-                return "server_not_responsible";
-            }
-            String value = args[2];
-            KeyStatus updated;
-            try {
-                updated = database.put(key, value);
-                kvServer.kvRepService.journal.add(String.format("put %s %s", key, value));
-            } catch (Exception e) {
-                logger.severe("Error while putting value: " + value + " in key: " + key + "!\n");
-                return "put_error " + key + " " + value;
-            }
-            switch (updated) {
-                case Created:
-                    return "put_success " + key;
-                case Updated:
-                    return "put_update " + key;
-                default:
-                    return "put_error " + key + " " + value;
-            }
+        else
+            return toLine(put(args[1], args[2]));
+    }
+
+    private Frame put(String key, String value) {
+        if (!kvServer.getServerData().isResponsible(key)) {
+            logger.info(String.format("key: %s not in range of %s to %s", (new Hash(key)), kvServer.getServerData().getFirstHash().toString(16),
+                    kvServer.getServerData().getLastHash().toString(16)));
+            return Frame.reply(Status.server_not_responsible, null, null);
+        }
+        KeyStatus updated;
+        try {
+            updated = database.put(key, value);
+            kvServer.kvRepService.journal.add(String.format("put %s %s", key, BinaryProtocol.escapeLine(value)));
+        } catch (Exception e) {
+            logger.severe("Error while putting value: " + value + " in key: " + key + "!\n");
+            return Frame.reply(Status.put_error, key, value);
+        }
+        switch (updated) {
+            case Created:
+                return Frame.reply(Status.put_success, key, null);
+            case Updated:
+                return Frame.reply(Status.put_update, key, null);
+            default:
+                return Frame.reply(Status.put_error, key, value);
         }
     }
     
@@ -112,30 +161,31 @@ public class KVCommandProcessor {
             return "error too few arguments for get";
         else if (args.length > 2)
             return "error too many arguments for get";
-        else {
-            String key = args[1];
-            String value;
-            try {
-                value = database.get(key);
-                value = value.replaceAll("\n", "  "); //we cant send values with new line
-            } catch (FileNotFoundException e) {
-                if (!kvServer.getServerData().isResponsible(key)) {
-                    var replicaData = kvServer.getReplicaData();
-                    if (replicaData == null) {
-                        return "server_not_responsible";
-                    } else if (replicaData.getServerData().stream().skip(1).anyMatch(
-                            serverData -> serverData.isResponsible(key)
-                    )) {
-                        //Find out if its one of the replica keys
-                        return "get_error " + key;
-                    }
-                    return "server_not_responsible";
+        else
+            return toLine(get(args[1]));
+    }
+
+    private Frame get(String key) {
+        String value;
+        try {
+            value = database.get(key);
+        } catch (FileNotFoundException e) {
+            if (!kvServer.getServerData().isResponsible(key)) {
+                var replicaData = kvServer.getReplicaData();
+                if (replicaData == null) {
+                    return Frame.reply(Status.server_not_responsible, null, null);
+                } else if (replicaData.getServerData().stream().skip(1).anyMatch(
+                        serverData -> serverData.isResponsible(key)
+                )) {
+                    //Find out if its one of the replica keys
+                    return Frame.reply(Status.get_error, key, null);
                 }
-                logger.severe("Error while getting the value of key: " + key + "!\n");
-                return "get_error " + key;
+                return Frame.reply(Status.server_not_responsible, null, null);
             }
-            return "get_success " + key + " " + value;
+            logger.severe("Error while getting the value of key: " + key + "!\n");
+            return Frame.reply(Status.get_error, key, null);
         }
+        return Frame.reply(Status.get_success, key, value);
     }
     
     private String handleKeyrange() {
@@ -153,22 +203,46 @@ public class KVCommandProcessor {
             return "error too few arguments for delete";
         else if (args.length > 2)
             return "error too many arguments for delete";
-        else {
-            String key = args[1];
-            if (!kvServer.getServerData().isResponsible(key)) {
-                logger.info(String.format("key: %s not in range of %s to %s", (new Hash(key)), kvServer.getServerData().getFirstHash().toString(16),
-                        kvServer.getServerData().getLastHash().toString(16)));
-                return "server_not_responsible";
-            }
-            if (database.delete(key)) {
-                kvServer.kvRepService.journal.add(String.format("delete %s", key));
-                return "delete_success " + key;
-            } else {
-                return "delete_error " + key;
-            }
+        else
+            return toLine(delete(args[1]));
+    }
+
+    private Frame delete(String key) {
+        if (!kvServer.getServerData().isResponsible(key)) {
+            logger.info(String.format("key: %s not in range of %s to %s", (new Hash(key)), kvServer.getServerData().getFirstHash().toString(16),
+                    kvServer.getServerData().getLastHash().toString(16)));
+            return Frame.reply(Status.server_not_responsible, null, null);
+        }
+        if (database.delete(key)) {
+            kvServer.kvRepService.journal.add(String.format("delete %s", key));
+            return Frame.reply(Status.delete_success, key, null);
+        } else {
+            return Frame.reply(Status.delete_error, key, null);
         }
     }
     
+    /**
+     * handle the admin commands cache_policy [strategy] and cache_resize [keys or bytes, e.g. 512m], which replace
+     * the cache without a restart
+     *
+     * @param args
+     * @return server response
+     */
+    private String handleCacheConfig(String[] args) {
+        if (args.length != 2)
+            return "error " + args[0] + " takes one argument";
+        try {
+            if (args[0].equals("cache_policy"))
+                database.reconfigureCache(args[1].toUpperCase(), null);
+            else
+                database.reconfigureCache(null, args[1]);
+        } catch (IllegalArgumentException e) {
+            return args[0] + "_error " + e.getMessage();
+        }
+        logger.info("Cache reconfigured by " + args[0] + " " + args[1]);
+        return args[0] + "_success " + args[1];
+    }
+
     private String handleKeyrangeRead() {
         if (kvServer.getReplicaData() == null)
             return String.format("keyrange_read_success %s", kvServer.getServerData());
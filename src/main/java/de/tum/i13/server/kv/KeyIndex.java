@@ -0,0 +1,146 @@
+package de.tum.i13.server.kv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * In memory set of all stored keys sorted by their hash, so the keys of a server range are a sub set view instead of a
+ * directory listing with an MD5 per key.
+ * <p>
+ * Checkpoint layout: count(4), then per key [keyLength(4) key hashLength(4) hash], then the crc(8) of everything
+ * before. The hash is stored so loading does not recompute it.
+ */
+class KeyIndex {
+    private static final Logger logger = Logger.getLogger(KeyIndex.class.getName());
+    private final ConcurrentSkipListSet<HashedKey> keys = new ConcurrentSkipListSet<>();
+
+    KeyIndex() {
+    }
+
+    KeyIndex(Collection<String> initialKeys) {
+        initialKeys.forEach(this::add);
+    }
+
+    void add(String key) {
+        add(new HashedKey(key));
+    }
+
+    void add(HashedKey key) {
+        keys.add(key);
+    }
+
+    void remove(String key) {
+        remove(new HashedKey(key));
+    }
+
+    void remove(HashedKey key) {
+        keys.remove(key);
+    }
+
+    boolean contains(String key) {
+        return keys.contains(new HashedKey(key));
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return all keys in hash order
+     */
+    List<String> keys() {
+        return toKeys(keys);
+    }
+
+    /**
+     * @return keys whose hash lies in [firstHash, lastHash], in hash order
+     */
+    List<String> range(BigInteger firstHash, BigInteger lastHash) {
+        if (firstHash.compareTo(lastHash) > 0)
+            return new ArrayList<>();
+        //the empty key sorts before every key of the same hash
+        return toKeys(keys.subSet(new HashedKey(firstHash, ""), true,
+                new HashedKey(lastHash.add(BigInteger.ONE), ""), false));
+    }
+
+    private static List<String> toKeys(NavigableSet<HashedKey> view) {
+        var result = new ArrayList<String>();
+        for (var key : view)
+            result.add(key.key);
+        return result;
+    }
+
+    /**
+     * Write the index under a temporary name and rename it once it is complete
+     *
+     * @param checkpoint
+     * @throws IOException
+     */
+    void checkpoint(Path checkpoint) throws IOException {
+        var temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        var snapshot = new ArrayList<>(keys);
+        var crc = new CRC32();
+        try (var out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)), crc))) {
+            out.writeInt(snapshot.size());
+            for (var key : snapshot) {
+                var keyBytes = key.key.getBytes(StandardCharsets.UTF_8);
+                var hashBytes = key.hash.toByteArray();
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeInt(hashBytes.length);
+                out.write(hashBytes);
+            }
+            var checksum = crc.getValue();
+            out.writeLong(checksum);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param checkpoint
+     * @return the index of the checkpoint or null if there is none or it is damaged
+     */
+    static KeyIndex load(Path checkpoint) {
+        var crc = new CRC32();
+        try (var in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(checkpoint)), crc))) {
+            var index = new KeyIndex();
+            var count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                var keyBytes = in.readNBytes(in.readInt());
+                var hashBytes = in.readNBytes(in.readInt());
+                index.keys.add(new HashedKey(new BigInteger(hashBytes), new String(keyBytes, StandardCharsets.UTF_8)));
+            }
+            var expected = crc.getValue();
+            if (in.readLong() != expected) {
+                logger.warning("Damaged key index checkpoint " + checkpoint);
+                return null;
+            }
+            return index;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Unable to load key index checkpoint " + checkpoint + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package de.tum.i13.server.kv;
+
+/**
+ * Used to decide whether to send put_update or not
+ */
+public enum KeyStatus {
+    Updated, Created
+}
@@ -2,104 +2,181 @@ package de.tum.i13.server.kv;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
 
-class Node {
-    final String key;
-    final int frequency;
-
-    public Node(String key, int frequency) {
-        this.key = key;
-        this.frequency = frequency;
-    }
+/**
+ * LFU with O(1) operations. Keys are kept in frequency buckets, a list of buckets ordered by frequency where every
+ * bucket holds its keys in insertion order. A hit moves the key to the bucket of the next frequency, the displaced key
+ * is the oldest one of the lowest frequency.
+ * <p>
+ * Frequencies age: after AGING_PERIOD accesses per cached key all of them are halved, so keys that were hot long ago
+ * and went cold are displaced eventually.
+ */
+class LFUCache extends Cache {
+    static final int AGING_PERIOD = 10;
 
-    @Override
-    public int hashCode() {
-        return Objects.hash(key);
-    }
+    private final Map<String, Bucket> bucketOf = new HashMap<>();
+    //sentinel: head.next has the lowest frequency
+    private final Bucket head = new Bucket(0);
+    private long accesses = 0;
 
-    // 2 Node are equals if key is equal
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (!(o instanceof Node)) return false;
-        Node node = (Node) o;
-        return key.equals(node.key);
+    LFUCache(int size, StorageEngine disk) {
+        this(size, 0, disk);
     }
-}
 
-class LFUCache extends Cache {
-    
-    private final PriorityBlockingQueue<Node> frequencyHeap = new PriorityBlockingQueue<>(size,
-            Comparator.comparingInt(node -> node.frequency));
-    private final Map<String, Integer> frequencyDict = new ConcurrentHashMap<>(size); //used for
-    // fast look up
-    // frequency
-    
-    LFUCache(int size, Database disk) {
-        super(size, disk);
+    LFUCache(int size, long maxBytes, StorageEngine disk) {
+        super(size, maxBytes, disk);
+        head.next = head;
+        head.prev = head;
     }
 
     @Override
     String get(String key) throws FileNotFoundException {
-        if (theCache.containsKey(key)) {
-            //increase frequency
-            int oldFrequency = frequencyDict.get(key);
-            //reconstruct the tree
-            //noinspection SuspiciousMethodCalls
-            frequencyHeap.remove(key); //O(log n)
-            frequencyHeap.add(new Node(key, oldFrequency + 1)); //O(log n)
-            frequencyDict.replace(key, oldFrequency + 1);
-            return theCache.get(key);
+        var cached = lookup(key);
+        if (cached != null) {
+            synchronized (this) {
+                if (bucketOf.containsKey(key)) //not displaced meanwhile
+                    increaseFrequency(key);
+            }
+            return cached;
         } else {
             //cache miss
-            String valueFromDisk = disk.getFromDisk(key);
-            while (theCache.size() >= size)
-                resize();
-            theCache.put(key, valueFromDisk);
-            frequencyHeap.add(new Node(key, 1));
-            frequencyDict.put(key, 1);
+            String valueFromDisk = load(key);
+            admit(key, valueFromDisk);
             return valueFromDisk;
         }
     }
-    
+
     @Override
     KeyStatus put(String key, String value) throws IOException {
-        if (theCache.containsKey(key)) {
-            theCache.put(key, value);
-            //increase frequency
-            int oldFrequency = frequencyDict.get(key);
-            //reconstruct the tree
-            //noinspection SuspiciousMethodCalls
-            frequencyHeap.remove(key); //O(log n)
-            frequencyHeap.add(new Node(key, oldFrequency + 1)); //O(log n)
-            frequencyDict.replace(key, oldFrequency + 1);
+        admit(key, value);
+        return writeThrough(key, value);
+    }
+
+    @Override
+    boolean delete(String key) {
+        forget(key);
+        return deleteThrough(key);
+    }
+
+    @Override
+    synchronized void forget(String key) {
+        evict(key);
+        var bucket = bucketOf.remove(key);
+        if (bucket != null)
+            bucket.remove(key);
+    }
+
+    /**
+     * @param key
+     * @return current frequency of key, 0 if it is not cached
+     */
+    synchronized int frequency(String key) {
+        var bucket = bucketOf.get(key);
+        return bucket == null ? 0 : bucket.frequency;
+    }
+
+    @Override
+    synchronized List<String> hotKeys(int limit) {
+        var keys = new ArrayList<String>();
+        for (var bucket = head.prev; bucket != head && keys.size() < limit; bucket = bucket.prev)
+            bucket.keys.stream().limit(limit - keys.size()).forEach(keys::add);
+        return keys;
+    }
+
+    private synchronized void admit(String key, String value) {
+        if (!fits(key, value)) {
+            forget(key);
+        } else if (bucketOf.containsKey(key)) {
+            store(key, value);
+            increaseFrequency(key);
         } else {
             //cache miss
-            while (theCache.size() >= size)
+            while (isFull(weigh(key, value)) && head.next != head)
                 resize();
-            theCache.put(key, value);
-            frequencyHeap.add(new Node(key, 1));
-            frequencyDict.put(key, 1);
+            store(key, value);
+            var first = head.next;
+            if (first.frequency != 1)
+                first = new Bucket(1).linkAfter(head);
+            first.keys.add(key);
+            bucketOf.put(key, first);
+            age();
         }
-        return disk.putToDisk(key, value);
     }
-    
-    @Override
-    boolean delete(String key) {
-        theCache.remove(key);
-        frequencyHeap.remove(new Node(key, 1));
-        frequencyDict.remove(key);
-        return disk.deleteFromDisk(key);
+
+    private void increaseFrequency(String key) {
+        var bucket = bucketOf.get(key);
+        var next = bucket.next;
+        if (next.frequency != bucket.frequency + 1)
+            next = new Bucket(bucket.frequency + 1).linkAfter(bucket);
+        next.keys.add(key);
+        bucketOf.put(key, next);
+        bucket.remove(key);
+        age();
     }
 
     private void resize() {
-        var keyToRemove = frequencyHeap.remove().key;
-        frequencyDict.remove(keyToRemove);
-        theCache.remove(keyToRemove);
+        var lowest = head.next;
+        var keyToRemove = lowest.keys.iterator().next();
+        lowest.remove(keyToRemove);
+        bucketOf.remove(keyToRemove);
+        displace(keyToRemove);
+    }
+
+    /**
+     * Halve all frequencies every AGING_PERIOD * size accesses, O(size) but amortized O(1) per access
+     */
+    private void age() {
+        if (++accesses < (long) AGING_PERIOD * size)
+            return;
+        accesses = 0;
+        for (var bucket = head.next; bucket != head; bucket = bucket.next) {
+            bucket.frequency = Math.max(1, bucket.frequency / 2);
+            var previous = bucket.prev;
+            if (previous != head && previous.frequency == bucket.frequency) {
+                //halving keeps the order, only neighbours can end up with the same frequency
+                for (var key : bucket.keys)
+                    bucketOf.put(key, previous);
+                previous.keys.addAll(bucket.keys);
+                bucket.unlink();
+            }
+        }
+    }
+
+    private static class Bucket {
+        int frequency;
+        final LinkedHashSet<String> keys = new LinkedHashSet<>();
+        Bucket prev;
+        Bucket next;
+
+        Bucket(int frequency) {
+            this.frequency = frequency;
+        }
+
+        Bucket linkAfter(Bucket bucket) {
+            prev = bucket;
+            next = bucket.next;
+            bucket.next.prev = this;
+            bucket.next = this;
+            return this;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+        }
+
+        /**
+         * Remove key and the bucket itself once it is empty
+         */
+        void remove(String key) {
+            keys.remove(key);
+            if (keys.isEmpty())
+                unlink();
+        }
     }
 }
@@ -2,58 +2,203 @@ package de.tum.i13.server.kv;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+/**
+ * LRU with O(1) promotion. The recency order is a doubly linked list through the nodes of the cached keys, most
+ * recently used first. A hit reads the value from the concurrent map without locking and only records the key in a
+ * read buffer; the buffered hits are replayed on the list in one batch when a buffer is full or before the next
+ * admission. When the lock is busy and the buffers are full, hits are dropped, which only makes the order a little
+ * less exact.
+ */
 class LRUCache extends Cache {
-    
-    private final LinkedList<String> keys = new LinkedList<>();
-    
-    LRUCache(int size, Database store) {
-        super(size, store);
+    //power of two, a thread always records into the same buffer
+    private static final int READ_BUFFERS = 16;
+    private static final int READ_BUFFER_SIZE = 32;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //guarded by lock
+    private final Map<String, Node> nodes = new HashMap<>();
+    //sentinel: head.next is the most, head.prev the least recently used key
+    private final Node head = new Node(null);
+    private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFERS];
+
+    LRUCache(int size, StorageEngine store) {
+        this(size, 0, store);
+    }
+
+    LRUCache(int size, long maxBytes, StorageEngine store) {
+        super(size, maxBytes, store);
+        head.next = head;
+        head.prev = head;
+        for (int i = 0; i < READ_BUFFERS; i++)
+            readBuffers[i] = new ReadBuffer();
     }
 
     @Override
     String get(String key) throws FileNotFoundException {
-        if (theCache.containsKey(key)) {
-            keys.remove(key);
-            keys.addFirst(key);
-            return theCache.get(key);
+        var cached = lookup(key);
+        if (cached != null) {
+            var buffer = readBuffers[(int) Thread.currentThread().threadId() & (READ_BUFFERS - 1)];
+            if (buffer.record(key) && lock.tryLock()) {
+                try {
+                    drainReadBuffers();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return cached;
         } else {
             //cache miss
-            String valueFromDisk = disk.getFromDisk(key);
-            while (theCache.size() >= size)
-                resize();
-            theCache.put(key, valueFromDisk);
-            keys.addFirst(key);
+            String valueFromDisk = load(key);
+            admit(key, valueFromDisk);
             return valueFromDisk;
         }
     }
-    
+
     @Override
     KeyStatus put(String key, String value) throws IOException {
-        if (theCache.containsKey(key)) {
-            keys.remove(key);
-            keys.addFirst(key);
-            theCache.put(key, value);
-        } else {
-            //cache miss
-            while (theCache.size() >= size)
-                resize();
-            theCache.put(key, value);
-            keys.addFirst(key);
-        }
-        return disk.putToDisk(key, value);
+        admit(key, value);
+        return writeThrough(key, value);
     }
-    
+
     @Override
     boolean delete(String key) {
-        theCache.remove(key);
-        keys.remove(key);
-        return disk.deleteFromDisk(key);
+        forget(key);
+        return deleteThrough(key);
+    }
+
+    @Override
+    void forget(String key) {
+        lock.lock();
+        try {
+            evict(key);
+            var node = nodes.remove(key);
+            if (node != null)
+                node.unlink();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    List<String> hotKeys(int limit) {
+        var keys = new ArrayList<String>();
+        lock.lock();
+        try {
+            drainReadBuffers();
+            for (var node = head.next; node != head && keys.size() < limit; node = node.next)
+                keys.add(node.key);
+        } finally {
+            lock.unlock();
+        }
+        return keys;
+    }
+
+    private void admit(String key, String value) {
+        lock.lock();
+        try {
+            drainReadBuffers();
+            if (!fits(key, value)) {
+                forget(key);
+                return;
+            }
+            var node = nodes.get(key);
+            if (node != null) {
+                node.unlink();
+            } else {
+                while (isFull(weigh(key, value)) && head.prev != head)
+                    resize();
+                node = new Node(key);
+                nodes.put(key, node);
+            }
+            node.linkAfter(head);
+            store(key, value);
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void resize() {
-        String keyToRemove = keys.removeLast();
-        theCache.remove(keyToRemove);
+        var eldest = head.prev;
+        eldest.unlink();
+        nodes.remove(eldest.key);
+        displace(eldest.key);
+    }
+
+    /**
+     * Move the keys of all buffered hits to the front, the lock has to be held
+     */
+    private void drainReadBuffers() {
+        for (var buffer : readBuffers) {
+            buffer.drain(key -> {
+                var node = nodes.get(key);
+                if (node != null) { //not displaced meanwhile
+                    node.unlink();
+                    node.linkAfter(head);
+                }
+            });
+        }
+    }
+
+    private static class Node {
+        final String key;
+        Node prev;
+        Node next;
+
+        Node(String key) {
+            this.key = key;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+        }
+
+        void linkAfter(Node node) {
+            prev = node;
+            next = node.next;
+            node.next.prev = this;
+            node.next = this;
+        }
+    }
+
+    /**
+     * Lossy buffer of hit keys, written without locking by many threads and drained under the cache lock
+     */
+    private static class ReadBuffer {
+        private final AtomicReferenceArray<String> keys = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicInteger writeIndex = new AtomicInteger();
+
+        /**
+         * @return true if the buffer is full and should be drained
+         */
+        boolean record(String key) {
+            if (writeIndex.get() >= READ_BUFFER_SIZE)
+                return true;
+            var index = writeIndex.getAndIncrement();
+            if (index < READ_BUFFER_SIZE) {
+                keys.lazySet(index, key);
+                return index == READ_BUFFER_SIZE - 1;
+            }
+            return true;
+        }
+
+        void drain(Consumer<String> action) {
+            var count = Math.min(writeIndex.get(), READ_BUFFER_SIZE);
+            for (int i = 0; i < count; i++) {
+                var key = keys.getAndSet(i, null);
+                if (key != null)
+                    action.accept(key);
+            }
+            writeIndex.set(0);
+        }
     }
 }
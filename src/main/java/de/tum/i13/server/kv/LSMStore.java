@@ -0,0 +1,609 @@
+package de.tum.i13.server.kv;
+
+import de.tum.i13.shared.Hash;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Log structured merge tree. Puts go to a memtable sorted by key hash and to its log file. A full memtable is flushed
+ * to an immutable level 0 SSTable in the background, and a background compactor merges level 0 into level 1 and
+ * every too large level into the next one (leveled compaction), so every level from 1 on has no overlapping tables.
+ * <p>
+ * The memtable log is a WriteAheadLog: concurrent puts are group committed and synced according to the FsyncPolicy.
+ * Values are encoded with the ValueCodec in the log and in the tables, the memtables hold them decoded.
+ */
+class LSMStore implements StorageEngine {
+    private static final Logger logger = Logger.getLogger(LSMStore.class.getName());
+    /**
+     * Marks a deleted key in memtables and tables. Compared by identity, so it never equals a stored value
+     */
+    @SuppressWarnings("StringOperationCanBeSimplified")
+    static final String TOMBSTONE = new String("deleted");
+    static final long DEFAULT_MEMTABLE_SIZE = 4L * 1024 * 1024;
+    private static final String LOG_PREFIX = "memtable-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int LEVEL0_COMPACTION_TRIGGER = 4;
+    private static final long BASE_LEVEL_SIZE = 10L * 1024 * 1024;
+    private static final long TARGET_TABLE_SIZE = 2L * 1024 * 1024;
+    private static final int MAX_LEVEL = 6;
+
+    private final Path directory;
+    private final long memtableSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final ValueCodec codec;
+    private final AtomicLong nextTableId = new AtomicLong();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(r -> daemon(r, "memtable-flusher"));
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> daemon(r, "lsm-compactor"));
+    private final Object compactionLock = new Object();
+    //a level from 1 on is compacted into the next one once it is larger than this, times 10 per level
+    long baseLevelSize = BASE_LEVEL_SIZE;
+    private final FilterMetrics filterMetrics = new FilterMetrics();
+    private volatile State state;
+    private long nextSeq;
+    private boolean isCompacting = false;
+
+    LSMStore(Path directory) throws IOException {
+        this(directory, DEFAULT_MEMTABLE_SIZE);
+    }
+
+    LSMStore(Path directory, long memtableSize) throws IOException {
+        this(directory, memtableSize, FsyncPolicy.OS);
+    }
+
+    LSMStore(Path directory, long memtableSize, FsyncPolicy fsyncPolicy) throws IOException {
+        this(directory, memtableSize, fsyncPolicy, ValueCodec.NONE);
+    }
+
+    LSMStore(Path directory, long memtableSize, FsyncPolicy fsyncPolicy, ValueCodec codec) throws IOException {
+        this.directory = directory;
+        this.memtableSize = memtableSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.codec = codec;
+        Files.createDirectories(directory);
+        recover();
+        maybeCompact();
+    }
+
+    @Override
+    public String get(String key) throws FileNotFoundException {
+        var value = lookup(new HashedKey(key));
+        if (value == null || value == TOMBSTONE)
+            throw new FileNotFoundException(key);
+        return value;
+    }
+
+    /**
+     * Returns once the put is committed to the memtable log. The old value is looked up before taking the lock, a
+     * lookup may read tables; Database orders the operations on one key
+     */
+    @Override
+    public KeyStatus put(String key, String value) throws IOException {
+        var hashedKey = new HashedKey(key);
+        var old = lookup(hashedKey);
+        WriteAheadLog log;
+        long end;
+        synchronized (this) {
+            log = state.memtables.get(0).log;
+            end = write(hashedKey, value);
+        }
+        log.commit(end);
+        return old == null || old == TOMBSTONE ? KeyStatus.Created : KeyStatus.Updated;
+    }
+
+    @Override
+    public boolean delete(String key) {
+        var hashedKey = new HashedKey(key);
+        var old = lookup(hashedKey);
+        if (old == null || old == TOMBSTONE)
+            return false;
+        try {
+            WriteAheadLog log;
+            long end;
+            synchronized (this) {
+                log = state.memtables.get(0).log;
+                end = write(hashedKey, TOMBSTONE);
+            }
+            log.commit(end);
+        } catch (IOException e) {
+            logger.severe("Unable to delete key " + key + ": " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        var value = lookup(new HashedKey(key));
+        return value != null && value != TOMBSTONE;
+    }
+
+    /**
+     * @return all stored keys in hash order
+     */
+    @Override
+    public List<String> keySet() {
+        return scan(BigInteger.ZERO, Hash.getMaxHash().md5Value);
+    }
+
+    /**
+     * Sequential scan over the range: memtables and tables are sorted by hash, so every source is read from the
+     * first key of the range until the first key behind it. Only keys are read from the tables, no value is decoded
+     */
+    @Override
+    public List<String> scan(BigInteger firstHash, BigInteger lastHash) {
+        var from = new HashedKey(firstHash, "");
+        while (true) {
+            var current = state;
+            try {
+                var keys = new ArrayList<String>();
+                var entries = mergedKeys(current, from);
+                while (entries.hasNext()) {
+                    var key = entries.next().getKey();
+                    if (key.hash.compareTo(lastHash) > 0)
+                        break;
+                    keys.add(key.key);
+                }
+                return keys;
+            } catch (IllegalStateException e) {
+                if (state == current)
+                    throw e;
+                //a table was compacted away while scanning, try again with the new tables
+            }
+        }
+    }
+
+    @Override
+    public StorageEngine openNamespace(String name) throws IOException {
+        return new LSMStore(directory.resolve(name), memtableSize, fsyncPolicy, codec);
+    }
+
+    /**
+     * Flush the memtable and wait for the background threads
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!state.memtables.get(0).entries.isEmpty())
+                rotate();
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+            //the flush may have started one more compaction
+            compactor.shutdown();
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        state.memtables.get(0).closeLog();
+    }
+
+    @Override
+    public FilterMetrics filterMetrics() {
+        return filterMetrics;
+    }
+
+    /**
+     * Newest value of key: memtables first, then tables level by level. The Bloom filter of a table
+     * decides in memory whether it has to be read at all
+     *
+     * @return the value, TOMBSTONE or null if the key was never stored
+     */
+    private String lookup(HashedKey key) {
+        while (true) {
+            var current = state;
+            for (var memtable : current.memtables) {
+                var value = memtable.entries.get(key);
+                if (value != null)
+                    return value;
+            }
+            try {
+                for (var table : current.tables) {
+                    if (!table.mayContain(key))
+                        continue;
+                    if (!table.mightContain(key)) {
+                        filterMetrics.negative();
+                        continue;
+                    }
+                    var value = table.get(key);
+                    if (value != null)
+                        return value;
+                    filterMetrics.falsePositive();
+                }
+                return null;
+            } catch (ClosedChannelException e) {
+                if (state == current) {
+                    logger.severe("Table closed unexpectedly while reading " + key);
+                    return null;
+                }
+                //a table was compacted away while reading, try again with the new tables
+            } catch (IOException e) {
+                logger.severe("Unable to read key " + key + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return end of the record in the log of the active memtable, to commit after releasing the lock
+     */
+    private long write(HashedKey key, String value) throws IOException {
+        var active = state.memtables.get(0);
+        var end = active.append(key.key, value);
+        active.entries.put(key, value);
+        if (active.bytes.get() >= memtableSize)
+            rotate();
+        return end;
+    }
+
+    /**
+     * Freeze the active memtable and flush it in the background
+     */
+    private synchronized void rotate() throws IOException {
+        var frozen = state.memtables.get(0);
+        var memtables = new ArrayList<Memtable>();
+        memtables.add(new Memtable(nextSeq++));
+        memtables.addAll(state.memtables);
+        state = new State(memtables, state.tables);
+        flusher.execute(() -> {
+            try {
+                flush(frozen);
+            } catch (IOException e) {
+                logger.severe("Unable to flush memtable " + frozen.seq + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void flush(Memtable memtable) throws IOException {
+        memtable.closeLog();
+        SSTable table = null;
+        if (!memtable.entries.isEmpty())
+            table = SSTable.write(directory, 0, memtable.seq, nextTableId.getAndIncrement(), codec,
+                    memtable.entries.entrySet().iterator());
+        synchronized (this) {
+            var tables = new ArrayList<>(state.tables);
+            if (table != null)
+                tables.add(table);
+            var memtables = new ArrayList<>(state.memtables);
+            memtables.remove(memtable);
+            state = new State(memtables, tables);
+        }
+        Files.deleteIfExists(memtable.logPath);
+        logger.fine("Flushed memtable " + memtable.seq + " to " + table);
+        maybeCompact();
+    }
+
+    private void maybeCompact() {
+        synchronized (this) {
+            if (isCompacting)
+                return;
+            isCompacting = true;
+        }
+        compactor.execute(() -> {
+            try {
+                //noinspection StatementWithEmptyBody
+                while (compactOnce()) ;
+            } catch (IOException | IllegalStateException e) {
+                logger.severe("Compaction failed: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    isCompacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Merge level 0 into level 1 if it has too many tables, otherwise push the oldest table of the first too large
+     * level into the next level. The inputs are the picked tables plus all overlapping tables of the next level.
+     *
+     * @return false if no level needs a compaction
+     */
+    boolean compactOnce() throws IOException {
+        synchronized (compactionLock) {
+            var tables = state.tables;
+            var inputs = new ArrayList<SSTable>();
+            int outputLevel = -1;
+            var level0 = tables.stream().filter(t -> t.level == 0).collect(toList());
+            if (level0.size() >= LEVEL0_COMPACTION_TRIGGER) {
+                inputs.addAll(level0);
+                outputLevel = 1;
+            } else {
+                long levelLimit = baseLevelSize;
+                for (int level = 1; level < MAX_LEVEL; level++, levelLimit *= 10) {
+                    final var l = level;
+                    var levelSize = tables.stream().filter(t -> t.level == l).mapToLong(t -> t.size).sum();
+                    if (levelSize > levelLimit) {
+                        tables.stream().filter(t -> t.level == l).min(Comparator.comparingLong(t -> t.maxSeq))
+                                .ifPresent(inputs::add);
+                        outputLevel = level + 1;
+                        break;
+                    }
+                }
+            }
+            if (inputs.isEmpty())
+                return false;
+            var first = inputs.stream().map(SSTable::firstKey).min(Comparator.naturalOrder()).get();
+            var last = inputs.stream().map(SSTable::lastKey).max(Comparator.naturalOrder()).get();
+            final var target = outputLevel;
+            tables.stream().filter(t -> t.level == target && t.overlaps(first, last)).forEach(inputs::add);
+            //deleted keys can only be forgotten if no older value can be hidden below the output level
+            var isBottom = tables.stream().noneMatch(t -> t.level > target);
+            var maxSeq = inputs.stream().mapToLong(t -> t.maxSeq).max().getAsLong();
+            inputs.sort(State.NEWEST_FIRST);
+
+            var entries = merging(inputs.stream().map(SSTable::iterator).collect(toList()), isBottom);
+            var outputs = new ArrayList<SSTable>();
+            while (entries.hasNext()) {
+                var limited = new Iterator<Map.Entry<HashedKey, String>>() {
+                    private long written = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return written < TARGET_TABLE_SIZE && entries.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<HashedKey, String> next() {
+                        var entry = entries.next();
+                        written += entry.getKey().key.length() + entry.getValue().length();
+                        return entry;
+                    }
+                };
+                outputs.add(SSTable.write(directory, outputLevel, maxSeq, nextTableId.getAndIncrement(), codec,
+                        limited));
+            }
+            synchronized (this) {
+                var newTables = new ArrayList<>(state.tables);
+                newTables.removeAll(inputs);
+                newTables.addAll(outputs);
+                state = new State(state.memtables, newTables);
+            }
+            for (var input : inputs)
+                input.retire();
+            logger.info(String.format("Compacted %s into level %d %s", inputs, outputLevel, outputs));
+            return true;
+        }
+    }
+
+    /**
+     * Merge of the keys of all memtables and tables of a state in hash order starting at from, without deleted keys.
+     * The values of table entries are not read, see SSTable.keys
+     */
+    private Iterator<Map.Entry<HashedKey, String>> mergedKeys(State current, HashedKey from) {
+        var sources = new ArrayList<Iterator<Map.Entry<HashedKey, String>>>();
+        current.memtables.forEach(m -> sources.add(m.entries.tailMap(from).entrySet().iterator()));
+        current.tables.forEach(t -> sources.add(t.keys(from)));
+        return merging(sources, true);
+    }
+
+    /**
+     * K-way merge of sorted sources. For a key present in several sources the entry of the source
+     * with the lowest index wins, so sources have to be passed newest first.
+     */
+    private static Iterator<Map.Entry<HashedKey, String>> merging(List<Iterator<Map.Entry<HashedKey, String>>> sources,
+                                                                  boolean dropTombstones) {
+        var heap = new PriorityQueue<Source>();
+        for (int i = 0; i < sources.size(); i++) {
+            var source = new Source(sources.get(i), i);
+            if (source.head != null)
+                heap.add(source);
+        }
+        return new Iterator<>() {
+            private Map.Entry<HashedKey, String> next = advance();
+
+            private Map.Entry<HashedKey, String> advance() {
+                while (!heap.isEmpty()) {
+                    var winner = heap.poll();
+                    var entry = winner.head;
+                    winner.next();
+                    if (winner.head != null)
+                        heap.add(winner);
+                    //skip the older values of the same key
+                    while (!heap.isEmpty() && heap.peek().head.getKey().compareTo(entry.getKey()) == 0) {
+                        var older = heap.poll();
+                        older.next();
+                        if (older.head != null)
+                            heap.add(older);
+                    }
+                    if (!dropTombstones || entry.getValue() != TOMBSTONE)
+                        return entry;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<HashedKey, String> next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                var current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    private void recover() throws IOException {
+        var tables = new ArrayList<SSTable>();
+        var logs = new ArrayList<Path>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (var file : files.collect(toList())) {
+                var name = file.getFileName().toString();
+                if (name.endsWith(".tmp"))
+                    Files.delete(file); //unfinished flush or compaction
+                else if (SSTable.NAME.matcher(name).matches())
+                    tables.add(SSTable.open(file));
+                else if (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX))
+                    logs.add(file);
+            }
+        }
+        nextTableId.set(tables.stream().mapToLong(t -> t.id + 1).max().orElse(0));
+        nextSeq = tables.stream().mapToLong(t -> t.maxSeq + 1).max().orElse(0);
+        logs.sort(Comparator.comparingLong(LSMStore::logSeq));
+        for (var log : logs) {
+            //memtables that were not flushed before the last shutdown
+            var seq = logSeq(log);
+            nextSeq = Math.max(nextSeq, seq + 1);
+            var replayed = replayLog(log);
+            if (!replayed.isEmpty())
+                tables.add(SSTable.write(directory, 0, seq, nextTableId.getAndIncrement(), codec,
+                        replayed.entrySet().iterator()));
+            Files.delete(log);
+        }
+        var memtables = new ArrayList<Memtable>();
+        memtables.add(new Memtable(nextSeq++));
+        state = new State(memtables, tables);
+        logger.info(String.format("Opened LSM store %s with %d tables", directory, tables.size()));
+    }
+
+    /**
+     * Read a log until its end or the first damaged record
+     */
+    private static ConcurrentSkipListMap<HashedKey, String> replayLog(Path logPath) throws IOException {
+        var entries = new ConcurrentSkipListMap<HashedKey, String>();
+        var buffer = ByteBuffer.wrap(Files.readAllBytes(logPath));
+        while (buffer.remaining() >= 12) {
+            var start = buffer.position();
+            var crc = buffer.getInt();
+            var keyLength = buffer.getInt();
+            var valueLength = buffer.getInt();
+            var bodyLength = keyLength + Math.max(valueLength, 0);
+            if (keyLength < 0 || valueLength < SSTable.TOMBSTONE || bodyLength > buffer.remaining())
+                break;
+            var check = new CRC32();
+            check.update(buffer.array(), start + 4, 8 + bodyLength);
+            if ((int) check.getValue() != crc)
+                break;
+            var key = new String(buffer.array(), buffer.position(), keyLength, StandardCharsets.UTF_8);
+            var value = valueLength == SSTable.TOMBSTONE ? TOMBSTONE
+                    : ValueCodec.decode(buffer.array(), buffer.position() + keyLength, valueLength);
+            entries.put(new HashedKey(key), value);
+            buffer.position(buffer.position() + bodyLength);
+        }
+        return entries;
+    }
+
+    private static long logSeq(Path log) {
+        var name = log.getFileName().toString();
+        return Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length()));
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        var t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Immutable snapshot of all memtables (active one first) and tables (newest first), replaced as a whole
+     * so a reader always sees a consistent set
+     */
+    private static class State {
+        //lower levels first, within a level the newest flush and then the newest table, see SSTable
+        static final Comparator<SSTable> NEWEST_FIRST = Comparator.comparingInt((SSTable t) -> t.level)
+                .thenComparing(Comparator.comparingLong((SSTable t) -> t.maxSeq).reversed())
+                .thenComparing(Comparator.comparingLong((SSTable t) -> t.id).reversed());
+        final List<Memtable> memtables;
+        final List<SSTable> tables;
+
+        State(List<Memtable> memtables, List<SSTable> tables) {
+            this.memtables = List.copyOf(memtables);
+            var sorted = new ArrayList<>(tables);
+            sorted.sort(NEWEST_FIRST);
+            this.tables = List.copyOf(sorted);
+        }
+    }
+
+    /**
+     * Sorted in memory table with its log, so the entries survive a crash until they are flushed
+     * Log record: crc(4) keyLength(4) valueLength(4, -1 for a deleted key) key value
+     */
+    private class Memtable {
+        final long seq;
+        final ConcurrentSkipListMap<HashedKey, String> entries = new ConcurrentSkipListMap<>();
+        final AtomicLong bytes = new AtomicLong();
+        final Path logPath;
+        final WriteAheadLog log;
+
+        Memtable(long seq) throws IOException {
+            this.seq = seq;
+            this.logPath = directory.resolve(LOG_PREFIX + seq + LOG_SUFFIX);
+            this.log = new WriteAheadLog(logPath, fsyncPolicy);
+        }
+
+        /**
+         * @return end of the record in the log, not committed yet
+         */
+        long append(String key, String value) throws IOException {
+            var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            var valueBytes = value == TOMBSTONE ? new byte[0] : codec.encode(value);
+            var record = ByteBuffer.allocate(12 + keyBytes.length + valueBytes.length);
+            record.putInt(0).putInt(keyBytes.length).putInt(value == TOMBSTONE ? SSTable.TOMBSTONE : valueBytes.length)
+                    .put(keyBytes).put(valueBytes);
+            var crc = new CRC32();
+            crc.update(record.array(), 4, record.capacity() - 4);
+            record.putInt(0, (int) crc.getValue());
+            record.flip();
+            bytes.addAndGet(record.capacity());
+            return log.enqueue(record);
+        }
+
+        /**
+         * Commit all records and close the log, waiting puts return afterwards
+         */
+        void closeLog() throws IOException {
+            log.close();
+        }
+    }
+
+    private static class Source implements Comparable<Source> {
+        final Iterator<Map.Entry<HashedKey, String>> iterator;
+        final int rank;
+        Map.Entry<HashedKey, String> head;
+
+        Source(Iterator<Map.Entry<HashedKey, String>> iterator, int rank) {
+            this.iterator = iterator;
+            this.rank = rank;
+            next();
+        }
+
+        void next() {
+            head = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public int compareTo(Source o) {
+            var byKey = head.getKey().compareTo(o.head.getKey());
+            return byKey != 0 ? byKey : Integer.compare(rank, o.rank);
+        }
+    }
+}
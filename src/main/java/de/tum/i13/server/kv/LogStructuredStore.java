@@ -0,0 +1,688 @@
+package de.tum.i13.server.kv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Bitcask style storage. Every write is appended to the active segment file and the in memory keydir remembers
+ * where the newest value of each key lives, so a put is a sequential append and a get is a single positional read.
+ * <p>
+ * Record layout: crc(4) keyLength(4) valueLength(4, -1 for a deleted key) key value, the value encoded by the
+ * ValueCodec. Merges copy the encoded bytes.
+ * <p>
+ * The active segment is written through a WriteAheadLog, so concurrent puts are group committed and synced according
+ * to the FsyncPolicy.
+ * <p>
+ * Old segments are merged in the background once more than half of their bytes are overwritten or deleted values.
+ * <p>
+ * Every immutable segment gets a hint file ([id].hint) with the key, hash and value location of each of its records,
+ * written when the segment is rolled over, merged or closed. On start the keydir is rebuilt from the hint files
+ * without reading any value; only segments without a matching hint file are scanned. Both happen in parallel.
+ * <p>
+ * Hint layout: segmentSize(8) count(4), per record [keyLength(4) key hashLength(4) hash valueOffset(8)
+ * valueLength(4, -1 for a deleted key)], then the crc(8) of everything before. A hint whose segmentSize differs
+ * from the segment is stale and ignored.
+ */
+class LogStructuredStore implements StorageEngine {
+    private static final Logger logger = Logger.getLogger(LogStructuredStore.class.getName());
+    static final String SEGMENT_SUFFIX = ".seg";
+    private static final String MERGE_SUFFIX = ".merge";
+    private static final String HINT_SUFFIX = ".hint";
+    static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final int HEADER_SIZE = 12;
+    private static final int TOMBSTONE = -1;
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final ValueCodec codec;
+    private final Map<String, Location> keydir = new ConcurrentHashMap<>();
+    //the keydir keys in hash order for keySet and scan
+    private final KeyIndex index = new KeyIndex();
+    //ordered by id, the order decides which record wins during recovery
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ExecutorService merger = Executors.newSingleThreadExecutor(r -> {
+        var t = new Thread(r, "segment-merger");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object mergeLock = new Object();
+    private Segment active;
+    private boolean isMerging = false;
+
+    LogStructuredStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    LogStructuredStore(Path directory, long maxSegmentSize) throws IOException {
+        this(directory, maxSegmentSize, FsyncPolicy.OS);
+    }
+
+    LogStructuredStore(Path directory, long maxSegmentSize, FsyncPolicy fsyncPolicy) throws IOException {
+        this(directory, maxSegmentSize, fsyncPolicy, ValueCodec.NONE);
+    }
+
+    LogStructuredStore(Path directory, long maxSegmentSize, FsyncPolicy fsyncPolicy, ValueCodec codec)
+            throws IOException {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.codec = codec;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * get value to key with one positional read
+     *
+     * @param key
+     * @return
+     * @throws FileNotFoundException if the key is not stored
+     */
+    @Override
+    public String get(String key) throws FileNotFoundException {
+        while (true) {
+            var location = keydir.get(key);
+            if (location == null)
+                throw new FileNotFoundException(key);
+            try {
+                var value = location.segment.read(location.valueOffset, location.valueLength);
+                return ValueCodec.decode(value.array());
+            } catch (ClosedChannelException e) {
+                //segment was merged away in the mean time, the keydir already points to the new location
+                if (keydir.get(key) == location)
+                    throw new FileNotFoundException(key);
+            } catch (IOException e) {
+                logger.severe("Unable to read key " + key + ": " + e.getMessage());
+                throw new FileNotFoundException(key);
+            }
+        }
+    }
+
+    /**
+     * append key value pair to the active segment, returns once the record is committed
+     *
+     * @param key
+     * @param value
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public KeyStatus put(String key, String value) throws IOException {
+        var valueBytes = codec.encode(value);
+        WriteAheadLog log;
+        long end;
+        Location old;
+        var hashedKey = new HashedKey(key);
+        synchronized (this) {
+            end = append(hashedKey, valueBytes);
+            log = active.log;
+            old = keydir.put(key, new Location(active, end - valueBytes.length, valueBytes.length));
+            if (old != null)
+                old.segment.deadBytes.addAndGet(old.recordSize(key));
+            else
+                index.add(hashedKey);
+        }
+        log.commit(end);
+        return old == null ? KeyStatus.Created : KeyStatus.Updated;
+    }
+
+    /**
+     * append a tombstone for key
+     *
+     * @param key
+     * @return false if the key was not stored
+     */
+    @Override
+    public boolean delete(String key) {
+        try {
+            WriteAheadLog log;
+            long end;
+            synchronized (this) {
+                var old = keydir.get(key);
+                if (old == null)
+                    return false;
+                var hashedKey = new HashedKey(key);
+                end = append(hashedKey, null);
+                log = active.log;
+                keydir.remove(key);
+                index.remove(hashedKey);
+                old.segment.deadBytes.addAndGet(old.recordSize(key));
+            }
+            log.commit(end);
+        } catch (IOException e) {
+            logger.severe("Unable to delete key " + key + ": " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return keydir.containsKey(key);
+    }
+
+    @Override
+    public List<String> keySet() {
+        return index.keys();
+    }
+
+    @Override
+    public List<String> scan(BigInteger firstHash, BigInteger lastHash) {
+        return index.range(firstHash, lastHash);
+    }
+
+    @Override
+    public StorageEngine openNamespace(String name) throws IOException {
+        return new LogStructuredStore(directory.resolve(name), maxSegmentSize, fsyncPolicy, codec);
+    }
+
+    /**
+     * Wait for a running merge, commit the active segment and close all segments
+     */
+    @Override
+    public void close() throws IOException {
+        merger.shutdown();
+        try {
+            merger.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            active.closeLog();
+            if (active.hints != null)
+                writeHints(active, active.hints);
+            for (var segment : segments.values())
+                segment.retire();
+        }
+    }
+
+    /**
+     * enqueue one record at the end of the active segment, rolling over to a new segment if it is full
+     *
+     * @return end of the record inside the active segment, to commit on its log
+     */
+    private long append(HashedKey key, byte[] value) throws IOException {
+        var keyBytes = key.key.getBytes(StandardCharsets.UTF_8);
+        var valueLength = value == null ? 0 : value.length;
+        if (active.size > 0 && active.size + HEADER_SIZE + keyBytes.length + valueLength > maxSegmentSize)
+            rollOver();
+        var record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + valueLength);
+        record.putInt(0).putInt(keyBytes.length).putInt(value == null ? TOMBSTONE : value.length).put(keyBytes);
+        if (value != null)
+            record.put(value);
+        record.putInt(0, checksum(record.array()));
+        record.flip();
+        var end = active.log.enqueue(record);
+        active.size = end;
+        active.hints.add(new Hint(key, end - valueLength, value == null ? TOMBSTONE : valueLength));
+        if (value == null) //a tombstone never becomes live
+            active.deadBytes.addAndGet(record.capacity());
+        return end;
+    }
+
+    private void rollOver() throws IOException {
+        var full = active;
+        var hints = full.hints;
+        full.closeLog();
+        full.hints = null;
+        merger.execute(() -> {
+            try {
+                synchronized (mergeLock) {
+                    if (segments.get(full.id) == full) //not merged away meanwhile
+                        writeHints(full, hints);
+                }
+            } catch (IOException e) {
+                logger.severe("Unable to write hints of " + full.path + ": " + e.getMessage());
+            }
+        });
+        active = openSegment(active.id + 1);
+        active.openLog(fsyncPolicy);
+        active.hints = new ArrayList<>();
+        segments.put(active.id, active);
+        long total = 0;
+        long dead = 0;
+        for (var segment : segments.headMap(active.id).values()) {
+            total += segment.size;
+            dead += segment.deadBytes.get();
+        }
+        if (!isMerging && dead * 2 > total) {
+            isMerging = true;
+            merger.execute(this::mergeSafely);
+        }
+    }
+
+    private void mergeSafely() {
+        try {
+            merge();
+        } catch (IOException e) {
+            logger.severe("Segment merge failed: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                isMerging = false;
+            }
+        }
+    }
+
+    /**
+     * Rewrite the live records of all immutable segments into a single segment and drop the old files.
+     * The merged segment takes the highest merged id, so newer records in the active segment still win on recovery.
+     * <p>
+     * The old files are deleted one by one after the merged segment is in place, a crash in between leaves older ones
+     * behind. So the tombstone of a key that is still deleted is kept unless it lies in the oldest segment, where no
+     * older record of the key can come back; the next merge drops it, once its segment is the oldest.
+     */
+    void merge() throws IOException {
+        synchronized (mergeLock) {
+            Collection<Segment> inputs;
+            synchronized (this) {
+                inputs = new ArrayList<>(segments.headMap(active.id).values());
+            }
+            if (inputs.isEmpty())
+                return;
+            var mergedId = inputs.stream().mapToInt(s -> s.id).max().getAsInt();
+            var mergeFile = directory.resolve(mergedId + MERGE_SUFFIX);
+            var merged = new Segment(mergedId, mergeFile);
+            Map<String, Location[]> moved = new ConcurrentHashMap<>();
+            var mergedHints = new ArrayList<Hint>();
+            var oldestId = inputs.iterator().next().id;
+            var tombstones = new HashSet<String>();
+            for (var segment : inputs) {
+                segment.forEachRecord((key, valueOffset, valueLength) -> {
+                    var current = keydir.get(key);
+                    if (valueLength == TOMBSTONE) {
+                        if (current == null && segment.id != oldestId && tombstones.add(key))
+                            writeTombstone(merged, key, mergedHints);
+                        return;
+                    }
+                    if (current == null || current.segment != segment || current.valueOffset != valueOffset)
+                        return; //overwritten or deleted
+                    var value = segment.read(valueOffset, valueLength).array();
+                    var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                    var record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + value.length);
+                    record.putInt(0).putInt(keyBytes.length).putInt(value.length).put(keyBytes).put(value);
+                    record.putInt(0, checksum(record.array()));
+                    record.flip();
+                    var recordStart = merged.size;
+                    while (record.hasRemaining())
+                        merged.size += merged.channel().write(record, merged.size);
+                    var location = new Location(merged, recordStart + HEADER_SIZE + keyBytes.length, value.length);
+                    moved.put(key, new Location[]{current, location});
+                    mergedHints.add(new Hint(new HashedKey(key), location.valueOffset, location.valueLength));
+                });
+            }
+            merged.channel().force(true);
+            synchronized (this) {
+                moved.forEach((key, locations) -> {
+                    if (!keydir.replace(key, locations[0], locations[1]))
+                        merged.deadBytes.addAndGet(locations[1].recordSize(key)); //changed while merging
+                });
+                for (var segment : inputs)
+                    Files.deleteIfExists(hintPath(segment.id));
+                Files.move(mergeFile, segmentPath(mergedId), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                merged.path = segmentPath(mergedId);
+                for (var segment : inputs) {
+                    if (segment.id != mergedId)
+                        Files.deleteIfExists(segment.path);
+                    segment.retire();
+                }
+                segments.put(mergedId, merged);
+                for (var segment : inputs)
+                    if (segment.id != mergedId)
+                        segments.remove(segment.id);
+            }
+            writeHints(merged, mergedHints);
+            logger.info(String.format("Merged %d segments into %s", inputs.size(), merged.path));
+        }
+    }
+
+    /**
+     * Append a tombstone to a segment that is being merged, it counts as dead right away
+     */
+    private void writeTombstone(Segment merged, String key, List<Hint> mergedHints) throws IOException {
+        var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        var record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length);
+        record.putInt(0).putInt(keyBytes.length).putInt(TOMBSTONE).put(keyBytes);
+        record.putInt(0, checksum(record.array()));
+        record.flip();
+        while (record.hasRemaining())
+            merged.size += merged.channel().write(record, merged.size);
+        merged.deadBytes.addAndGet(record.capacity());
+        mergedHints.add(new Hint(new HashedKey(key), merged.size, TOMBSTONE));
+    }
+
+    /**
+     * Rebuild the keydir from the hint files, or by scanning the segments without one, and replay them in order
+     */
+    private void recover() throws IOException {
+        var start = System.currentTimeMillis();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (var leftOver : files.filter(p -> p.toString().endsWith(MERGE_SUFFIX) || p.toString().endsWith(".tmp"))
+                    .collect(toList()))
+                Files.delete(leftOver); //merge or hint file did not finish, the input segments are still there
+        }
+        List<Integer> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.map(p -> p.getFileName().toString()).filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted().collect(toList());
+        }
+        for (var id : ids)
+            segments.put(id, openSegment(id));
+        var lastId = ids.isEmpty() ? -1 : ids.get(ids.size() - 1);
+        var hintsBySegment = new ArrayList<Future<List<Hint>>>();
+        var loader = Executors.newFixedThreadPool(Math.max(1, Math.min(ids.size(),
+                Runtime.getRuntime().availableProcessors())));
+        try {
+            for (var segment : segments.values())
+                hintsBySegment.add(loader.submit(() -> loadHints(segment, segment.id != lastId)));
+            var i = 0;
+            for (var segment : segments.values()) {
+                var hints = hintsBySegment.get(i++).get();
+                replay(segment, hints);
+                if (segment.id == lastId)
+                    segment.hints = new ArrayList<>(hints);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recovering " + directory, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            loader.shutdown();
+        }
+        if (segments.isEmpty()) {
+            active = openSegment(0);
+            active.hints = new ArrayList<>();
+            segments.put(0, active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        active.openLog(fsyncPolicy);
+        logger.info(String.format("Opened log structured store %s with %d segments and %d keys in %d ms", directory,
+                segments.size(), keydir.size(), System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Read the hint file of the segment, or scan the segment if it has no valid one
+     *
+     * @param writeHints write the hint file after a scan, false for the active segment that still grows
+     * @return the records of the segment in order
+     */
+    private List<Hint> loadHints(Segment segment, boolean writeHints) throws IOException {
+        var hints = readHints(segment);
+        if (hints != null)
+            return hints;
+        var scanned = new ArrayList<Hint>();
+        var validEnd = segment.forEachRecord((key, valueOffset, valueLength) ->
+                scanned.add(new Hint(new HashedKey(key), valueOffset, valueLength)));
+        if (validEnd < segment.size) {
+            logger.warning(String.format("Segment %s has a torn tail, truncating at %d", segment.path, validEnd));
+            segment.channel().truncate(validEnd);
+            segment.size = validEnd;
+        }
+        if (writeHints)
+            writeHints(segment, scanned);
+        return scanned;
+    }
+
+    /**
+     * Apply the records of one segment to the keydir, segments have to be replayed from the oldest to the newest
+     */
+    private void replay(Segment segment, List<Hint> hints) {
+        for (var hint : hints) {
+            var key = hint.key.key;
+            var old = hint.valueLength == TOMBSTONE ? keydir.remove(key)
+                    : keydir.put(key, new Location(segment, hint.valueOffset, hint.valueLength));
+            if (old != null)
+                old.segment.deadBytes.addAndGet(old.recordSize(key));
+            if (hint.valueLength == TOMBSTONE) {
+                index.remove(hint.key);
+                segment.deadBytes.addAndGet(HEADER_SIZE + key.getBytes(StandardCharsets.UTF_8).length);
+            } else if (old == null) {
+                index.add(hint.key);
+            }
+        }
+    }
+
+    private void writeHints(Segment segment, List<Hint> hints) throws IOException {
+        var path = hintPath(segment.id);
+        var temp = directory.resolve(path.getFileName() + ".tmp");
+        var crc = new CRC32();
+        try (var out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)), crc))) {
+            out.writeLong(segment.size);
+            out.writeInt(hints.size());
+            for (var hint : hints) {
+                var keyBytes = hint.key.key.getBytes(StandardCharsets.UTF_8);
+                var hashBytes = hint.key.hash.toByteArray();
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeInt(hashBytes.length);
+                out.write(hashBytes);
+                out.writeLong(hint.valueOffset);
+                out.writeInt(hint.valueLength);
+            }
+            var checksum = crc.getValue();
+            out.writeLong(checksum);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the hints of the segment or null if it has no hint file or the file does not match the segment
+     */
+    private List<Hint> readHints(Segment segment) {
+        var path = hintPath(segment.id);
+        if (!Files.exists(path))
+            return null;
+        var crc = new CRC32();
+        try (var in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path)), crc))) {
+            if (in.readLong() != segment.size)
+                return null; //the segment changed after the hint was written
+            var count = in.readInt();
+            var hints = new ArrayList<Hint>(count);
+            for (int i = 0; i < count; i++) {
+                var key = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+                var hash = new BigInteger(in.readNBytes(in.readInt()));
+                hints.add(new Hint(new HashedKey(hash, key), in.readLong(), in.readInt()));
+            }
+            var expected = crc.getValue();
+            if (in.readLong() != expected) {
+                logger.warning("Damaged hint file " + path);
+                return null;
+            }
+            return hints;
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Unable to read hint file " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        return new Segment(id, segmentPath(id));
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(id + SEGMENT_SUFFIX);
+    }
+
+    private Path hintPath(int id) {
+        return directory.resolve(id + HINT_SUFFIX);
+    }
+
+    private static int checksum(byte[] record) {
+        var crc = new CRC32();
+        crc.update(record, 4, record.length - 4);
+        return (int) crc.getValue();
+    }
+
+    interface RecordVisitor {
+        void visit(String key, long valueOffset, int valueLength) throws IOException;
+    }
+
+    /**
+     * One record of a segment without its value, the content of a hint file
+     */
+    private static class Hint {
+        final HashedKey key;
+        final long valueOffset;
+        final int valueLength;
+
+        Hint(HashedKey key, long valueOffset, int valueLength) {
+            this.key = key;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+    }
+
+    /**
+     * Position of the newest value of a key
+     */
+    private static class Location {
+        final Segment segment;
+        final long valueOffset;
+        final int valueLength;
+
+        Location(Segment segment, long valueOffset, int valueLength) {
+            this.segment = segment;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+
+        long recordSize(String key) {
+            return HEADER_SIZE + key.getBytes(StandardCharsets.UTF_8).length + valueLength;
+        }
+    }
+
+    private static class Segment {
+        final int id;
+        final AtomicLong deadBytes = new AtomicLong();
+        volatile Path path;
+        volatile long size;
+        //only the active segment has a log, all others are immutable
+        volatile WriteAheadLog log;
+        //records of the active segment for its hint file, null for segments whose hint file is written
+        List<Hint> hints;
+        private volatile FileChannel channel;
+        private volatile boolean retired = false;
+
+        Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+
+        /**
+         * An interrupted thread closes a FileChannel for everyone, so reopen it unless the segment is gone
+         */
+        synchronized FileChannel channel() throws IOException {
+            if (!channel.isOpen()) {
+                if (retired)
+                    throw new ClosedChannelException();
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+
+        void openLog(FsyncPolicy fsyncPolicy) throws IOException {
+            log = new WriteAheadLog(path, fsyncPolicy);
+        }
+
+        void closeLog() throws IOException {
+            var current = log;
+            if (current != null)
+                current.close();
+            log = null;
+        }
+
+        ByteBuffer read(long offset, int length) throws IOException {
+            var current = log;
+            if (current != null) //a get right after the put may need the group commit to write the record first
+                current.commit(offset + length);
+            var buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel().read(buffer, offset + buffer.position()) < 0)
+                    throw new IOException("Unexpected end of segment " + path);
+            }
+            return buffer;
+        }
+
+        synchronized void retire() throws IOException {
+            retired = true;
+            try {
+                closeLog();
+            } finally {
+                channel.close();
+            }
+        }
+
+        /**
+         * Sequentially read all records until the end of the segment or the first damaged record
+         *
+         * @return offset after the last valid record
+         */
+        long forEachRecord(RecordVisitor visitor) throws IOException {
+            long position = 0;
+            var header = ByteBuffer.allocate(HEADER_SIZE);
+            while (position + HEADER_SIZE <= size) {
+                header.clear();
+                while (header.hasRemaining())
+                    channel().read(header, position + header.position());
+                var crc = header.getInt(0);
+                var keyLength = header.getInt(4);
+                var valueLength = header.getInt(8);
+                var bodyLength = (long) keyLength + Math.max(valueLength, 0);
+                if (keyLength < 0 || valueLength < TOMBSTONE || position + HEADER_SIZE + bodyLength > size)
+                    break;
+                var body = read(position + HEADER_SIZE, (int) bodyLength).array();
+                var check = new CRC32();
+                check.update(header.array(), 4, HEADER_SIZE - 4);
+                check.update(body);
+                if ((int) check.getValue() != crc)
+                    break;
+                var key = new String(body, 0, keyLength, StandardCharsets.UTF_8);
+                visitor.visit(key, position + HEADER_SIZE + keyLength, valueLength);
+                position += HEADER_SIZE + bodyLength;
+            }
+            return position;
+        }
+    }
+}
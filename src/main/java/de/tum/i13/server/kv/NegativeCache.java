@@ -0,0 +1,42 @@
+package de.tum.i13.server.kv;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keys recently found missing on disk, so repeated gets of them need no disk access. Every key has one slot chosen
+ * by its hash and a newer missing key simply overwrites it, so the memory is fixed and no operation locks. Losing a
+ * key only costs one disk lookup, but a put has to remove its key, which Cache does before writing to disk.
+ */
+class NegativeCache {
+    private final AtomicReferenceArray<String> slots;
+    private final int mask;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    NegativeCache(int capacity) {
+        var size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    boolean contains(String key) {
+        return key.equals(slots.get(slot(key)));
+    }
+
+    void add(String key) {
+        slots.set(slot(key), key);
+    }
+
+    void remove(String key) {
+        var slot = slot(key);
+        var current = slots.get(slot);
+        if (key.equals(current))
+            slots.compareAndSet(slot, current, null);
+    }
+
+    private int slot(String key) {
+        var h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,216 @@
+package de.tum.i13.server.kv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Second cache level between the Cache and the storage engine, with the values outside of the Java heap. It wraps
+ * the engine, so the Cache uses it like a disk: a get that misses here reads the engine and keeps the value, puts
+ * write through to the engine and deletes drop the key.
+ * <p>
+ * Values live in slabs, direct ByteBuffers of SLAB_SIZE, used as one ring: records [keyLength(4) valueLength(4)
+ * key value] are appended at the head and the oldest records at the tail are displaced when the ring is full (FIFO).
+ * A record never spans two slabs, the rest of a slab that is too small is skipped, marked by a keyLength of -1.
+ * The heap only holds the index from key to the record's position. Positions grow forever, the slab of a position
+ * is (position / SLAB_SIZE) % slabs.
+ * <p>
+ * Gets share a read lock, appending and displacing need the write lock. The slabs count against
+ * -XX:MaxDirectMemorySize.
+ */
+class OffHeapCache implements StorageEngine {
+    static final int SLAB_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final int SKIP = -1;
+
+    private final StorageEngine engine;
+    private final ByteBuffer[] slabs;
+    private final int slabSize;
+    private final long capacity;
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    //guarded by the write lock
+    private long head = 0;
+    private long tail = 0;
+
+    /**
+     * @param engine   storage engine below this cache
+     * @param maxBytes direct memory used for values, rounded down to whole slabs of at most SLAB_SIZE
+     */
+    OffHeapCache(StorageEngine engine, long maxBytes) {
+        this.engine = engine;
+        this.slabSize = (int) Math.min(SLAB_SIZE, maxBytes);
+        var count = (int) Math.max(1, maxBytes / slabSize);
+        this.slabs = new ByteBuffer[count];
+        for (int i = 0; i < count; i++)
+            slabs[i] = ByteBuffer.allocateDirect(slabSize);
+        this.capacity = (long) count * slabSize;
+    }
+
+    @Override
+    public String get(String key) throws FileNotFoundException {
+        var value = getCached(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = engine.get(key);
+        cache(key, value);
+        return value;
+    }
+
+    @Override
+    public KeyStatus put(String key, String value) throws IOException {
+        var status = engine.put(key, value);
+        cache(key, value);
+        return status;
+    }
+
+    @Override
+    public boolean delete(String key) {
+        index.remove(key);
+        return engine.delete(key);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return index.containsKey(key) || engine.contains(key);
+    }
+
+    @Override
+    public List<String> keySet() {
+        return engine.keySet();
+    }
+
+    @Override
+    public List<String> scan(BigInteger firstHash, BigInteger lastHash) {
+        return engine.scan(firstHash, lastHash);
+    }
+
+    @Override
+    public FilterMetrics filterMetrics() {
+        return engine.filterMetrics();
+    }
+
+    /**
+     * Replicas are not cached off heap
+     */
+    @Override
+    public StorageEngine openNamespace(String name) throws IOException {
+        return engine.openNamespace(name);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        engine.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.clear();
+        engine.close();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return bytes of direct memory holding records
+     */
+    long usedBytes() {
+        lock.readLock().lock();
+        try {
+            return head - tail;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private String getCached(String key) {
+        lock.readLock().lock();
+        try {
+            var position = index.get(key);
+            if (position == null)
+                return null;
+            var slab = slab(position).duplicate();
+            var offset = (int) (position % slabSize);
+            var keyLength = slab.getInt(offset);
+            var valueLength = slab.getInt(offset + 4);
+            var value = new byte[valueLength];
+            slab.position(offset + HEADER_SIZE + keyLength);
+            slab.get(value);
+            return new String(value, StandardCharsets.UTF_8);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void cache(String key, String value) {
+        var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        var valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        var size = HEADER_SIZE + keyBytes.length + valueBytes.length;
+        if (size > slabSize) {
+            index.remove(key);
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            var offset = (int) (head % slabSize);
+            var skip = offset + size > slabSize ? slabSize - offset : 0;
+            while (head + skip + size - tail > capacity)
+                displaceTail();
+            if (skip > 0) {
+                if (skip >= 4)
+                    slab(head).putInt(offset, SKIP);
+                head += skip;
+                offset = 0;
+            }
+            var slab = slab(head).duplicate();
+            slab.position(offset);
+            slab.putInt(keyBytes.length).putInt(valueBytes.length).put(keyBytes).put(valueBytes);
+            index.put(key, head);
+            head += size;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop the oldest record, or the skipped rest of its slab
+     */
+    private void displaceTail() {
+        var slab = slab(tail);
+        var offset = (int) (tail % slabSize);
+        var rest = slabSize - offset;
+        if (rest < HEADER_SIZE || slab.getInt(offset) == SKIP) {
+            tail += rest;
+            return;
+        }
+        var keyLength = slab.getInt(offset);
+        var valueLength = slab.getInt(offset + 4);
+        var keyBytes = new byte[keyLength];
+        slab.duplicate().position(offset + HEADER_SIZE).get(keyBytes);
+        index.remove(new String(keyBytes, StandardCharsets.UTF_8), tail);
+        tail += HEADER_SIZE + keyLength + valueLength;
+    }
+
+    private ByteBuffer slab(long position) {
+        return slabs[(int) ((position / slabSize) % slabs.length)];
+    }
+}
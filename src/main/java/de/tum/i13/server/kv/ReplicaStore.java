@@ -0,0 +1,215 @@
+package de.tum.i13.server.kv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keys this server only stores as a replica of another server. Every source server has its own namespace, a storage
+ * engine of the same kind as the primary one in replica/[source], so all replicas of a server are dropped by
+ * deleting one directory. Membership is a hash map from key to source, a get of a primary key never touches the
+ * replica namespaces.
+ */
+class ReplicaStore {
+    private static final Logger logger = Logger.getLogger(ReplicaStore.class.getName());
+    static final String DIRECTORY = "replica";
+    //replicas written before they were kept per source
+    static final String UNKNOWN_SOURCE = "unknown";
+
+    private final StorageEngine primary;
+    private final Path directory;
+    private final Map<String, StorageEngine> namespaces = new ConcurrentHashMap<>();
+    private final Map<String, String> sourceOfKey = new ConcurrentHashMap<>();
+    //puts and deletes share it, dropping a namespace needs it exclusively
+    private final ReadWriteLock namespaceLock = new ReentrantReadWriteLock();
+
+    /**
+     * Open the namespaces of all sources found below datadir/replica
+     */
+    ReplicaStore(StorageEngine primary, Path datadir) throws IOException {
+        this.primary = primary;
+        this.directory = datadir.resolve(DIRECTORY);
+        Files.createDirectories(directory);
+        migrate(datadir);
+        List<Path> sources;
+        try (Stream<Path> files = Files.list(directory)) {
+            sources = files.filter(Files::isDirectory).collect(toList());
+        }
+        for (var source : sources) {
+            var name = source.getFileName().toString();
+            var engine = primary.openNamespace(DIRECTORY + "/" + name);
+            namespaces.put(name, engine);
+            for (var key : engine.keySet())
+                sourceOfKey.put(key, name);
+        }
+    }
+
+    boolean contains(String key) {
+        return sourceOfKey.containsKey(key);
+    }
+
+    /**
+     * Under the read lock, so a concurrent drop of the source cannot close or remove its namespace meanwhile
+     */
+    String get(String key) throws FileNotFoundException {
+        namespaceLock.readLock().lock();
+        try {
+            var source = sourceOfKey.get(key);
+            var namespace = source == null ? null : namespaces.get(source);
+            if (namespace == null)
+                throw new FileNotFoundException(key);
+            return namespace.get(key);
+        } finally {
+            namespaceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param source server the replica belongs to, e.g. 127.0.0.1:5153
+     * @param key
+     * @param value
+     * @throws IOException
+     */
+    void put(String source, String key, String value) throws IOException {
+        var name = namespaceName(source);
+        namespaceLock.readLock().lock();
+        try {
+            var previous = sourceOfKey.get(key);
+            if (previous != null && !previous.equals(name))
+                namespaces.get(previous).delete(key); //the key moved to another server of the ring
+            namespace(name).put(key, value);
+            sourceOfKey.put(key, name);
+        } finally {
+            namespaceLock.readLock().unlock();
+        }
+    }
+
+    boolean delete(String key) {
+        namespaceLock.readLock().lock();
+        try {
+            var source = sourceOfKey.remove(key);
+            return source != null && namespaces.get(source).delete(key);
+        } finally {
+            namespaceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drop all replicas of one source server at once
+     *
+     * @param source
+     */
+    void drop(String source) {
+        var name = namespaceName(source);
+        namespaceLock.writeLock().lock();
+        try {
+            var engine = namespaces.remove(name);
+            if (engine == null)
+                return;
+            sourceOfKey.values().removeIf(name::equals);
+            var count = engine.keySet().size();
+            engine.close();
+            deleteRecursively(directory.resolve(name));
+            logger.info(String.format("Dropped %d replicas of %s", count, source));
+        } catch (IOException e) {
+            logger.severe("Unable to delete the replicas of " + source + ": " + e.getMessage());
+        } finally {
+            namespaceLock.writeLock().unlock();
+        }
+    }
+
+    void dropAll() {
+        for (var name : new ArrayList<>(namespaces.keySet()))
+            drop(name);
+    }
+
+    List<String> keySet() {
+        return new ArrayList<>(sourceOfKey.keySet());
+    }
+
+    /**
+     * @return the filter metrics of all namespaces added up
+     */
+    FilterMetrics filterMetrics() {
+        return FilterMetrics.sum(namespaces.values().stream().map(StorageEngine::filterMetrics)
+                .toArray(FilterMetrics[]::new));
+    }
+
+    void close() throws IOException {
+        namespaceLock.writeLock().lock();
+        try {
+            for (var engine : namespaces.values())
+                engine.close();
+        } finally {
+            namespaceLock.writeLock().unlock();
+        }
+    }
+
+    private StorageEngine namespace(String name) {
+        return namespaces.computeIfAbsent(name, n -> {
+            try {
+                return primary.openNamespace(DIRECTORY + "/" + n);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * The source is used as a directory name, so it must not contain a colon (Windows)
+     */
+    private static String namespaceName(String source) {
+        return source.replaceAll("[^A-Za-z0-9.\\-]", "_");
+    }
+
+    /**
+     * Move replicas of the old layout, .txt.replica files in the data directory or engine files directly in
+     * replica/, into the namespace of the unknown source
+     */
+    private void migrate(Path datadir) throws IOException {
+        var unknown = directory.resolve(UNKNOWN_SOURCE);
+        List<Path> legacy;
+        try (Stream<Path> files = Files.list(directory)) {
+            legacy = files.filter(Files::isRegularFile).collect(toList());
+        }
+        try (Stream<Path> files = Files.list(datadir)) {
+            legacy.addAll(files.filter(file -> file.getFileName().toString().endsWith(FileStorageEngine.REPLICA_SUFFIX))
+                    .collect(toList()));
+        }
+        if (legacy.isEmpty())
+            return;
+        Files.createDirectories(unknown);
+        for (var file : legacy) {
+            var name = file.getFileName().toString();
+            if (name.endsWith(FileStorageEngine.REPLICA_SUFFIX))
+                name = name.substring(0, name.length() - FileStorageEngine.REPLICA_SUFFIX.length())
+                        + FileStorageEngine.SUFFIX;
+            Files.move(file, unknown.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(datadir.resolve("keys" + FileStorageEngine.REPLICA_SUFFIX + ".index"));
+        logger.info(String.format("Moved %d replica files to %s", legacy.size(), unknown));
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(path)) {
+            files = walk.sorted(Comparator.reverseOrder()).collect(toList());
+        }
+        for (var file : files)
+            Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,341 @@
+package de.tum.i13.server.kv;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable file of key value pairs sorted by HashedKey, written by a memtable flush or a compaction.
+ * <p>
+ * Layout: records [keyLength(4) valueLength(4, -1 for a deleted key) key value], the value encoded by a ValueCodec, then a sparse index with every
+ * INDEX_INTERVAL-th key and the last key [keyLength(4) key offset(8)], then the Bloom filter of all keys, then the
+ * footer [indexOffset(8) filterOffset(8) indexCount(4) magic(4)]. Only the sparse index and the filter are kept in
+ * memory, a get of a missing key usually reads nothing and a get of a stored key reads one block.
+ * <p>
+ * File name: L[level]-[maxSeq]-[id].sst, maxSeq is the newest memtable flush whose data is in this table.
+ * A lower level always holds the newer value of a key. Within a level, tables only overlap at level 0 or after a crash
+ * left compaction inputs behind, there the higher maxSeq holds the newer value. Across levels maxSeq decides nothing:
+ * a compaction output gets the maxSeq of its inputs, so older data pushed down with it may carry the same one.
+ */
+class SSTable {
+    static final String SUFFIX = ".sst";
+    static final Pattern NAME = Pattern.compile("L(?<level>\\d+)-(?<seq>\\d+)-(?<id>\\d+)\\.sst");
+    private static final int INDEX_INTERVAL = 16;
+    private static final int FOOTER_SIZE = 24;
+    private static final int MAGIC = 0x55AB1F;
+    static final int TOMBSTONE = -1;
+    //value of a stored key in a scan over keys only
+    static final String PRESENT = new String("present");
+
+    final Path path;
+    final int level;
+    final long maxSeq;
+    final long id;
+    final long size;
+    private final HashedKey[] indexKeys;
+    private final long[] indexOffsets;
+    private final BloomFilter filter;
+    private final long dataEnd;
+    private volatile FileChannel channel;
+    private volatile boolean retired = false;
+
+    private SSTable(Path path, int level, long maxSeq, long id) throws IOException {
+        this.path = path;
+        this.level = level;
+        this.maxSeq = maxSeq;
+        this.id = id;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        var footer = readFully(size - FOOTER_SIZE, FOOTER_SIZE);
+        if (footer.getInt(20) != MAGIC)
+            throw new IOException("Not a sstable: " + path);
+        dataEnd = footer.getLong(0);
+        var filterOffset = footer.getLong(8);
+        var count = footer.getInt(16);
+        indexKeys = new HashedKey[count];
+        indexOffsets = new long[count];
+        filter = BloomFilter.readFrom(readFully(filterOffset, (int) (size - FOOTER_SIZE - filterOffset)));
+        var index = readFully(dataEnd, (int) (filterOffset - dataEnd));
+        for (int i = 0; i < count; i++) {
+            var key = new byte[index.getInt()];
+            index.get(key);
+            indexKeys[i] = new HashedKey(new String(key, StandardCharsets.UTF_8));
+            indexOffsets[i] = index.getLong();
+        }
+    }
+
+    static SSTable open(Path path) throws IOException {
+        var matcher = NAME.matcher(path.getFileName().toString());
+        if (!matcher.matches())
+            throw new IOException("Not a sstable name: " + path);
+        return new SSTable(path, Integer.parseInt(matcher.group("level")), Long.parseLong(matcher.group("seq")),
+                Long.parseLong(matcher.group("id")));
+    }
+
+    /**
+     * Write the sorted entries to a new table. Values equal to LSMStore.TOMBSTONE are written as deleted keys.
+     * The file is written under a temporary name and only renamed once it is complete.
+     */
+    static SSTable write(Path directory, int level, long maxSeq, long id, ValueCodec codec,
+                         Iterator<Map.Entry<HashedKey, String>> entries) throws IOException {
+        var path = directory.resolve(String.format("L%d-%d-%d%s", level, maxSeq, id, SUFFIX));
+        var temp = directory.resolve(path.getFileName() + ".tmp");
+        var indexKeys = new ArrayList<byte[]>();
+        var indexOffsets = new ArrayList<Long>();
+        var keyHashes = new long[1024];
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            long offset = 0;
+            int count = 0;
+            byte[] lastKey = null;
+            long lastOffset = 0;
+            while (entries.hasNext()) {
+                var entry = entries.next();
+                var key = entry.getKey().key.getBytes(StandardCharsets.UTF_8);
+                var isDeleted = entry.getValue() == LSMStore.TOMBSTONE;
+                var value = isDeleted ? new byte[0] : codec.encode(entry.getValue());
+                if (count == keyHashes.length)
+                    keyHashes = Arrays.copyOf(keyHashes, count * 2);
+                keyHashes[count] = BloomFilter.hash(entry.getKey().key);
+                if (count % INDEX_INTERVAL == 0) {
+                    indexKeys.add(key);
+                    indexOffsets.add(offset);
+                }
+                out.writeInt(key.length);
+                out.writeInt(isDeleted ? TOMBSTONE : value.length);
+                out.write(key);
+                out.write(value);
+                lastKey = key;
+                lastOffset = offset;
+                offset += 8 + key.length + value.length;
+                count++;
+            }
+            if (lastKey != null && indexOffsets.get(indexOffsets.size() - 1) != lastOffset) {
+                //the last key is always indexed, so the index also tells the key range of the table
+                indexKeys.add(lastKey);
+                indexOffsets.add(lastOffset);
+            }
+            var filterOffset = offset;
+            for (int i = 0; i < indexKeys.size(); i++) {
+                out.writeInt(indexKeys.get(i).length);
+                out.write(indexKeys.get(i));
+                out.writeLong(indexOffsets.get(i));
+                filterOffset += 4 + indexKeys.get(i).length + 8;
+            }
+            BloomFilter.of(keyHashes, count, BloomFilter.DEFAULT_BITS_PER_KEY).writeTo(out);
+            out.writeLong(offset);
+            out.writeLong(filterOffset);
+            out.writeInt(indexKeys.size());
+            out.writeInt(MAGIC);
+        }
+        try (var file = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            file.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        return new SSTable(path, level, maxSeq, id);
+    }
+
+    boolean isEmpty() {
+        return indexKeys.length == 0;
+    }
+
+    HashedKey firstKey() {
+        return indexKeys[0];
+    }
+
+    HashedKey lastKey() {
+        return indexKeys[indexKeys.length - 1];
+    }
+
+    boolean mayContain(HashedKey key) {
+        return !isEmpty() && key.compareTo(firstKey()) >= 0 && key.compareTo(lastKey()) <= 0;
+    }
+
+    /**
+     * @return false if the key is certainly not in this table, checked in memory by the key range and the filter
+     */
+    boolean mightContain(HashedKey key) {
+        return mayContain(key) && filter.mightContain(key.key);
+    }
+
+    boolean overlaps(HashedKey first, HashedKey last) {
+        return !isEmpty() && first.compareTo(lastKey()) <= 0 && last.compareTo(firstKey()) >= 0;
+    }
+
+    /**
+     * @param key
+     * @return the stored value, LSMStore.TOMBSTONE if the key was deleted or null if the table does not know it
+     * @throws ClosedChannelException if the table was removed by a compaction meanwhile
+     */
+    String get(HashedKey key) throws IOException {
+        if (!mayContain(key))
+            return null;
+        var block = Arrays.binarySearch(indexKeys, key);
+        if (block < 0)
+            block = -block - 2; //the block starting before key
+        var start = indexOffsets[block];
+        var end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataEnd;
+        var buffer = readFully(start, (int) (end - start));
+        while (buffer.hasRemaining()) {
+            var keyLength = buffer.getInt();
+            var valueLength = buffer.getInt();
+            var keyBytes = new byte[keyLength];
+            buffer.get(keyBytes);
+            var candidate = new HashedKey(new String(keyBytes, StandardCharsets.UTF_8));
+            var cmp = candidate.compareTo(key);
+            if (cmp == 0) {
+                if (valueLength == TOMBSTONE)
+                    return LSMStore.TOMBSTONE;
+                var value = new byte[valueLength];
+                buffer.get(value);
+                return ValueCodec.decode(value);
+            }
+            if (cmp > 0)
+                return null;
+            buffer.position(buffer.position() + Math.max(valueLength, 0));
+        }
+        return null;
+    }
+
+    /**
+     * Sequential scan over all entries, deleted keys have the value LSMStore.TOMBSTONE
+     */
+    Iterator<Map.Entry<HashedKey, String>> iterator() {
+        return iterator(0, true);
+    }
+
+    /**
+     * Sequential scan over all entries from the given key on
+     */
+    Iterator<Map.Entry<HashedKey, String>> iterator(HashedKey from) {
+        return iterator(from, true);
+    }
+
+    /**
+     * Sequential scan over the keys from the given key on that reads no value: a stored key has the value PRESENT,
+     * a deleted one LSMStore.TOMBSTONE
+     */
+    Iterator<Map.Entry<HashedKey, String>> keys(HashedKey from) {
+        return iterator(from, false);
+    }
+
+    private Iterator<Map.Entry<HashedKey, String>> iterator(HashedKey from, boolean withValues) {
+        if (isEmpty() || from.compareTo(firstKey()) <= 0)
+            return iterator(0, withValues);
+        if (from.compareTo(lastKey()) > 0)
+            return iterator(dataEnd, withValues);
+        var block = Arrays.binarySearch(indexKeys, from);
+        if (block < 0)
+            block = -block - 2;
+        var entries = iterator(indexOffsets[block], withValues);
+        return new Iterator<>() {
+            //skip the entries of the first block that are smaller than from
+            private Map.Entry<HashedKey, String> next = seek();
+
+            private Map.Entry<HashedKey, String> seek() {
+                while (entries.hasNext()) {
+                    var entry = entries.next();
+                    if (entry.getKey().compareTo(from) >= 0)
+                        return entry;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<HashedKey, String> next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                var current = next;
+                next = entries.hasNext() ? entries.next() : null;
+                return current;
+            }
+        };
+    }
+
+    /**
+     * @param withValues false to skip over the values instead of reading and decoding them
+     */
+    private Iterator<Map.Entry<HashedKey, String>> iterator(long start, boolean withValues) {
+        return new Iterator<>() {
+            private long position = start;
+
+            @Override
+            public boolean hasNext() {
+                return position < dataEnd;
+            }
+
+            @Override
+            public Map.Entry<HashedKey, String> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    var header = readFully(position, 8);
+                    var keyLength = header.getInt();
+                    var valueLength = header.getInt();
+                    var storedLength = Math.max(valueLength, 0);
+                    var body = readFully(position + 8, keyLength + (withValues ? storedLength : 0));
+                    position += 8 + keyLength + storedLength;
+                    var key = new HashedKey(new String(body.array(), 0, keyLength, StandardCharsets.UTF_8));
+                    if (valueLength == TOMBSTONE)
+                        return Map.entry(key, LSMStore.TOMBSTONE);
+                    return Map.entry(key, withValues ? ValueCodec.decode(body.array(), keyLength, valueLength) : PRESENT);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to read " + path, e);
+                }
+            }
+        };
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel().read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of sstable " + path);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * An interrupted thread closes a FileChannel for everyone, so reopen it unless the table is gone
+     */
+    private synchronized FileChannel channel() throws IOException {
+        if (!channel.isOpen()) {
+            if (retired)
+                throw new ClosedChannelException();
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    /**
+     * Close and delete the table after it was replaced by a compaction
+     */
+    synchronized void retire() throws IOException {
+        retired = true;
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName().toString();
+    }
+}
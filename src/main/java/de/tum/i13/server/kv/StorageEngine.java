@@ -0,0 +1,107 @@
+package de.tum.i13.server.kv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Disk layer below the cache. Database opens one engine for the keys this server is responsible for and one namespace
+ * per source server for the keys it only stores as a replica of another server, see ReplicaStore.
+ * <p>
+ * Implementations have to be thread safe.
+ */
+public interface StorageEngine {
+    /**
+     * @param key
+     * @return value to key
+     * @throws FileNotFoundException if the key is not stored
+     */
+    String get(String key) throws FileNotFoundException;
+
+    /**
+     * @param key
+     * @param value
+     * @return Created if the key was not stored before, Updated otherwise
+     * @throws IOException
+     */
+    KeyStatus put(String key, String value) throws IOException;
+
+    /**
+     * @param key
+     * @return false if the key was not stored
+     */
+    boolean delete(String key);
+
+    boolean contains(String key);
+
+    List<String> keySet();
+
+    /**
+     * All keys whose hash lies in [firstHash, lastHash], used for the data transfer of a key range
+     *
+     * @param firstHash
+     * @param lastHash
+     * @return
+     */
+    List<String> scan(BigInteger firstHash, BigInteger lastHash);
+
+    /**
+     * @return how the Bloom filters of this engine answered lookups of missing keys, null if it has none
+     */
+    default FilterMetrics filterMetrics() {
+        return null;
+    }
+
+    /**
+     * Open a separate engine of the same kind in a sub directory, used for replicated keys
+     *
+     * @param name relative path of the sub directory
+     * @return
+     * @throws IOException
+     */
+    StorageEngine openNamespace(String name) throws IOException;
+
+    /**
+     * Write buffered puts and deletes to disk, e.g. before the keys are transferred to another server
+     *
+     * @throws IOException
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Persist everything still held in memory
+     *
+     * @throws IOException
+     */
+    void close() throws IOException;
+
+    static StorageEngine open(String engine, Path directory) throws IOException {
+        return open(engine, directory, FsyncPolicy.OS);
+    }
+
+    static StorageEngine open(String engine, Path directory, FsyncPolicy fsyncPolicy) throws IOException {
+        return open(engine, directory, fsyncPolicy, ValueCodec.NONE);
+    }
+
+    /**
+     * @param engine      FILE, LOG or LSM, everything else falls back to FILE
+     * @param directory   data directory of the server
+     * @param fsyncPolicy when the write ahead log of LOG and LSM is synced, FILE writes every key to its own file
+     * @param codec       how values are compressed on disk, namespaces use the same codec
+     * @return
+     * @throws IOException
+     */
+    static StorageEngine open(String engine, Path directory, FsyncPolicy fsyncPolicy, ValueCodec codec) throws IOException {
+        switch (engine == null ? "FILE" : engine) {
+            case "LOG":
+                return new LogStructuredStore(directory, LogStructuredStore.DEFAULT_SEGMENT_SIZE, fsyncPolicy, codec);
+            case "LSM":
+                return new LSMStore(directory, LSMStore.DEFAULT_MEMTABLE_SIZE, fsyncPolicy, codec);
+            default:
+                return new FileStorageEngine(directory, codec);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package de.tum.i13.server.kv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * W-TinyLFU. New keys enter a small window LRU (1% of the size). A key falling out of the window is only admitted
+ * to the main cache if a CountMinSketch of recent accesses estimates it more frequent than the key the main cache
+ * would displace for it. The main cache is a segmented LRU: keys hit a second time move from probation to protected
+ * (80% of the main cache), protected keys that fall out go back to probation.
+ * <p>
+ * A scan, e.g. the replica bootstrap reading every key once, only churns the window and the sketch, the frequently
+ * used keys in the main cache stay.
+ * <p>
+ * The segment limits are in the unit of the capacity, keys or bytes.
+ */
+class TinyLFUCache extends Cache {
+    private final long windowSize;
+    private final long protectedSize;
+    private final CountMinSketch sketch;
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Segment window = new Segment();
+    private final Segment probation = new Segment();
+    private final Segment protectedSegment = new Segment();
+
+    TinyLFUCache(int size, StorageEngine disk) {
+        this(size, 0, disk);
+    }
+
+    TinyLFUCache(int size, long maxBytes, StorageEngine disk) {
+        super(size, maxBytes, disk);
+        this.windowSize = Math.max(1, capacity() / 100);
+        this.protectedSize = (capacity() - windowSize) * 8 / 10;
+        this.sketch = new CountMinSketch(size);
+    }
+
+    @Override
+    String get(String key) throws FileNotFoundException {
+        var cached = lookup(key);
+        if (cached != null) {
+            synchronized (this) {
+                sketch.increment(key);
+                var node = nodes.get(key);
+                if (node != null) //not displaced meanwhile
+                    onHit(node);
+            }
+            return cached;
+        } else {
+            //cache miss
+            String valueFromDisk = load(key);
+            admit(key, valueFromDisk);
+            return valueFromDisk;
+        }
+    }
+
+    @Override
+    KeyStatus put(String key, String value) throws IOException {
+        admit(key, value);
+        return writeThrough(key, value);
+    }
+
+    @Override
+    boolean delete(String key) {
+        forget(key);
+        return deleteThrough(key);
+    }
+
+    @Override
+    synchronized void forget(String key) {
+        evict(key);
+        var node = nodes.remove(key);
+        if (node != null)
+            node.segment.remove(node);
+    }
+
+    private synchronized void admit(String key, String value) {
+        sketch.increment(key);
+        if (!fits(key, value)) {
+            forget(key);
+            return;
+        }
+        var node = nodes.get(key);
+        if (node != null) {
+            node.segment.weight += weigh(key, value) - node.weight;
+            node.weight = weigh(key, value);
+            store(key, value);
+            onHit(node);
+        } else {
+            node = new Node(key, weigh(key, value));
+            nodes.put(key, node);
+            store(key, value);
+            window.addFirst(node);
+            while (window.weight > windowSize)
+                evictFromWindow();
+        }
+    }
+
+    private void onHit(Node node) {
+        if (node.segment == probation) {
+            probation.remove(node);
+            protectedSegment.addFirst(node);
+            //the protected segment is full, its least recently used key gets another chance in probation
+            while (protectedSegment.weight > protectedSize)
+                probation.addFirst(protectedSegment.removeLast());
+        } else {
+            var segment = node.segment;
+            segment.remove(node);
+            segment.addFirst(node);
+        }
+    }
+
+    /**
+     * The least recently used key of the window either goes to probation or is displaced
+     */
+    private void evictFromWindow() {
+        var candidate = window.removeLast();
+        //with a byte budget one candidate can need several victims
+        while (weight() > capacity()) {
+            var victim = probation.last() != null ? probation.last() : protectedSegment.last();
+            if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                displace(candidate);
+                return;
+            }
+            victim.segment.remove(victim);
+            displace(victim);
+        }
+        probation.addFirst(candidate);
+    }
+
+    private void displace(Node node) {
+        nodes.remove(node.key);
+        displace(node.key);
+    }
+
+    private static class Node {
+        final String key;
+        long weight;
+        Segment segment;
+        Node prev;
+        Node next;
+
+        Node(String key, long weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * LRU list of keys, the first node is the most recently used one
+     */
+    private static class Segment {
+        private final Node head = new Node(null, 0);
+        long weight = 0;
+
+        Segment() {
+            head.next = head;
+            head.prev = head;
+        }
+
+        void addFirst(Node node) {
+            node.segment = this;
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+            weight += node.weight;
+        }
+
+        void remove(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.segment = null;
+            weight -= node.weight;
+        }
+
+        Node last() {
+            return head.prev == head ? null : head.prev;
+        }
+
+        Node removeLast() {
+            var last = head.prev;
+            remove(last);
+            return last;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package de.tum.i13.server.kv;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * How the storage engines encode values on disk. Values are stored as UTF-8, with deflate every value of at least
+ * threshold bytes is compressed if that makes it smaller. A compressed value starts with the byte 0xFF, which never
+ * occurs in UTF-8, so decoding needs no configuration and values written before compression was enabled (or with
+ * another threshold) stay readable.
+ */
+public class ValueCodec {
+    public static final ValueCodec NONE = new ValueCodec(false, Integer.MAX_VALUE);
+    static final int DEFAULT_THRESHOLD = 128;
+    private static final byte DEFLATED = (byte) 0xFF;
+    //a Deflater holds native memory and is expensive to create. Connections may run on many (virtual) threads, so a
+    //few are pooled instead of one per thread; one that does not fit back into the pool is ended at once
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final boolean isDeflate;
+    final int threshold;
+
+    private ValueCodec(boolean isDeflate, int threshold) {
+        this.isDeflate = isDeflate;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param compression none, deflate or deflate with a threshold in bytes, e.g. deflate:256
+     * @return
+     */
+    public static ValueCodec parse(String compression) {
+        if (compression == null || compression.equalsIgnoreCase("none"))
+            return NONE;
+        var parts = compression.split(":", 2);
+        if (!parts[0].equalsIgnoreCase("deflate"))
+            throw new IllegalArgumentException("Unknown compression: " + compression);
+        try {
+            return new ValueCodec(true, parts.length == 2 ? Integer.parseInt(parts[1]) : DEFAULT_THRESHOLD);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown compression threshold: " + compression);
+        }
+    }
+
+    /**
+     * @param value
+     * @return the bytes to store, compressed if the value is long enough and compresses
+     */
+    byte[] encode(String value) {
+        var raw = value.getBytes(StandardCharsets.UTF_8);
+        if (!isDeflate || raw.length < threshold)
+            return raw;
+        var deflater = deflaters.poll();
+        if (deflater == null)
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            var out = new byte[raw.length];
+            out[0] = DEFLATED;
+            var length = 1;
+            while (!deflater.finished() && length < out.length)
+                length += deflater.deflate(out, length, out.length - length);
+            //incompressible, e.g. already compressed data
+            if (!deflater.finished())
+                return raw;
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater))
+                deflater.end();
+        }
+    }
+
+    static String decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes
+     * @param offset start of the stored value
+     * @param length length of the stored value
+     * @return the value, decompressed if it was stored compressed
+     */
+    static String decode(byte[] bytes, int offset, int length) {
+        if (length == 0 || bytes[offset] != DEFLATED)
+            return new String(bytes, offset, length, StandardCharsets.UTF_8);
+        var inflater = inflaters.poll();
+        if (inflater == null)
+            inflater = new Inflater();
+        var out = new ByteArrayOutputStream(length * 4);
+        var buffer = new byte[Math.max(length * 4, 1024)];
+        try {
+            inflater.setInput(bytes, offset + 1, length - 1);
+            while (!inflater.finished()) {
+                var n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IllegalStateException("Truncated compressed value");
+                out.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Damaged compressed value", e);
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater))
+                inflater.end();
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return isDeflate ? "deflate:" + threshold : "none";
+    }
+}
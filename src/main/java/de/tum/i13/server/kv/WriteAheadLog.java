@@ -0,0 +1,199 @@
+package de.tum.i13.server.kv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Append only log file with group commit.
+ * <p>
+ * A writer first enqueues its record, which only reserves its position, and then commits it. The first committing
+ * thread writes every queued record with one gathering write and, with FsyncPolicy ALWAYS, one fsync. Writers that
+ * commit while a batch is written wait for it and the next one, so concurrent puts share a single write and fsync
+ * instead of paying one each. Engines enqueue under their own lock, which keeps the log in the order of their
+ * in memory state, and commit after releasing it.
+ */
+class WriteAheadLog {
+    private static final Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+    private static final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        var t = new Thread(r, "wal-sync");
+        t.setDaemon(true);
+        return t;
+    });
+
+    final Path path;
+    private final FsyncPolicy policy;
+    private final FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchWritten = lock.newCondition();
+    private final ScheduledFuture<?> syncTask;
+    private List<ByteBuffer> pending = new ArrayList<>();
+    //end of the last enqueued record
+    private long end;
+    //everything before was written and, with FsyncPolicy ALWAYS, forced to the disk
+    private long committed;
+    private boolean isWriting = false;
+    private volatile boolean isDirty = false;
+    private IOException failure;
+
+    /**
+     * Open the log and append behind its current end
+     */
+    WriteAheadLog(Path path, FsyncPolicy policy) throws IOException {
+        this.path = path;
+        this.policy = policy;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.end = channel.size();
+        this.committed = end;
+        channel.position(end);
+        syncTask = policy.isInterval() ? syncer.scheduleWithFixedDelay(this::syncSafely, policy.intervalMillis,
+                policy.intervalMillis, TimeUnit.MILLISECONDS) : null;
+    }
+
+    /**
+     * @return end of the log including records that are not committed yet
+     */
+    long size() {
+        lock.lock();
+        try {
+            return end;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserve the next position for record, nothing is written yet
+     *
+     * @param record
+     * @return end of the record in the log, to pass to commit
+     * @throws ClosedChannelException if the log was closed
+     */
+    long enqueue(ByteBuffer record) throws IOException {
+        lock.lock();
+        try {
+            if (!channel.isOpen())
+                throw new ClosedChannelException();
+            pending.add(record);
+            end += record.remaining();
+            return end;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until everything up to position is written, becoming the writer of the next batch if nobody else is
+     *
+     * @param position
+     * @throws IOException if the batch could not be written, the log is unusable afterwards
+     */
+    void commit(long position) throws IOException {
+        lock.lock();
+        try {
+            while (committed < position) {
+                if (failure != null)
+                    throw new IOException("Write ahead log " + path + " failed", failure);
+                if (isWriting)
+                    batchWritten.awaitUninterruptibly();
+                else
+                    writeBatch();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long append(ByteBuffer record) throws IOException {
+        var position = enqueue(record);
+        commit(position);
+        return position;
+    }
+
+    /**
+     * Called with the lock held, which is released during the write so others can enqueue the next batch
+     */
+    private void writeBatch() throws IOException {
+        var batch = pending.toArray(new ByteBuffer[0]);
+        var batchEnd = end;
+        var remaining = end - committed;
+        pending = new ArrayList<>();
+        isWriting = true;
+        IOException error = null;
+        lock.unlock();
+        try {
+            while (remaining > 0)
+                remaining -= channel.write(batch);
+            if (policy.isAlways())
+                channel.force(false);
+            else
+                isDirty = true;
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+        }
+        isWriting = false;
+        if (error == null)
+            committed = batchEnd;
+        else
+            failure = error;
+        batchWritten.signalAll();
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * Force everything written so far to the disk
+     */
+    void sync() throws IOException {
+        if (isDirty) {
+            isDirty = false;
+            channel.force(false);
+        }
+    }
+
+    private void syncSafely() {
+        try {
+            sync();
+        } catch (ClosedChannelException ignored) {
+            //closed meanwhile, close synced already
+        } catch (IOException e) {
+            logger.severe("Unable to sync " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write and sync all queued records and close the file. Committing an enqueued record returns right away afterwards
+     */
+    void close() throws IOException {
+        if (syncTask != null)
+            syncTask.cancel(false);
+        lock.lock();
+        try {
+            if (!channel.isOpen())
+                return;
+            try {
+                commit(end);
+                if (!policy.equals(FsyncPolicy.OS))
+                    sync();
+            } finally {
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package de.tum.i13.server.kv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Write back mode: puts and deletes only mark their key dirty in memory and a background flusher writes the dirty
+ * keys to the engine every intervalMillis. Repeated updates of a key between two flushes cost one disk write.
+ * When the dirty keys and values exceed maxDirtyBytes, the writing thread flushes itself.
+ * <p>
+ * Gets see dirty values first. keySet and scan flush before they ask the engine, so data transfers and the replica
+ * bootstrap see every write; close flushes too. A crash loses the writes of the last interval.
+ * <p>
+ * Flushes are serialized, a key is only marked clean if it was not written again while it was flushed.
+ */
+class WriteBackStore implements StorageEngine {
+    private static final Logger logger = Logger.getLogger(WriteBackStore.class.getName());
+    static final long DEFAULT_MAX_DIRTY_BYTES = 64L << 20;
+
+    private final StorageEngine engine;
+    private final long maxDirtyBytes;
+    private final Map<String, Dirty> dirty = new ConcurrentHashMap<>();
+    private final AtomicLong dirtyBytes = new AtomicLong();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        var t = new Thread(r, "write-back-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param engine         storage engine the dirty keys are written to
+     * @param intervalMillis time between two background flushes
+     * @param maxDirtyBytes  bytes of dirty keys and values before a writer has to flush
+     */
+    WriteBackStore(StorageEngine engine, long intervalMillis, long maxDirtyBytes) {
+        this.engine = engine;
+        this.maxDirtyBytes = maxDirtyBytes;
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param engine
+     * @param policy off, or the flush interval in ms with an optional dirty limit, e.g. 100 or 100:64m
+     * @return engine itself if write back is off
+     */
+    static StorageEngine wrap(StorageEngine engine, String policy) {
+        if (policy == null || policy.equalsIgnoreCase("off"))
+            return engine;
+        var parts = policy.split(":", 2);
+        var interval = parts[0].endsWith("ms") ? parts[0].substring(0, parts[0].length() - 2) : parts[0];
+        try {
+            var intervalMillis = Long.parseLong(interval);
+            if (intervalMillis <= 0)
+                return engine;
+            var maxDirtyBytes = parts.length == 2 ? Cache.parseBytes(parts[1]) : DEFAULT_MAX_DIRTY_BYTES;
+            return new WriteBackStore(engine, intervalMillis, maxDirtyBytes);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown write back policy: " + policy);
+        }
+    }
+
+    @Override
+    public String get(String key) throws FileNotFoundException {
+        var entry = dirty.get(key);
+        if (entry == null)
+            return engine.get(key);
+        if (entry.value == null)
+            throw new FileNotFoundException(key);
+        return entry.value;
+    }
+
+    @Override
+    public KeyStatus put(String key, String value) throws IOException {
+        var existed = contains(key);
+        mark(key, new Dirty(value));
+        return existed ? KeyStatus.Updated : KeyStatus.Created;
+    }
+
+    @Override
+    public boolean delete(String key) {
+        if (!contains(key))
+            return false;
+        try {
+            mark(key, new Dirty(null));
+        } catch (IOException e) {
+            logger.severe("Unable to flush before deleting " + key + ": " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        var entry = dirty.get(key);
+        return entry == null ? engine.contains(key) : entry.value != null;
+    }
+
+    @Override
+    public List<String> keySet() {
+        flushQuietly();
+        return engine.keySet();
+    }
+
+    @Override
+    public List<String> scan(BigInteger firstHash, BigInteger lastHash) {
+        flushQuietly();
+        return engine.scan(firstHash, lastHash);
+    }
+
+    @Override
+    public FilterMetrics filterMetrics() {
+        return engine.filterMetrics();
+    }
+
+    /**
+     * Replicas are written through
+     */
+    @Override
+    public StorageEngine openNamespace(String name) throws IOException {
+        return engine.openNamespace(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        flush();
+        engine.close();
+    }
+
+    /**
+     * Write all dirty keys to the engine
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            for (var entry : new ArrayList<>(dirty.entrySet())) {
+                var key = entry.getKey();
+                var value = entry.getValue();
+                if (value.value == null)
+                    engine.delete(key);
+                else
+                    engine.put(key, value.value);
+                //written again in the meantime: stays dirty for the next flush
+                if (dirty.remove(key, value))
+                    dirtyBytes.addAndGet(-value.weigh(key));
+            }
+        }
+    }
+
+    long getDirtyBytes() {
+        return dirtyBytes.get();
+    }
+
+    private void mark(String key, Dirty value) throws IOException {
+        var old = dirty.put(key, value);
+        dirtyBytes.addAndGet(value.weigh(key) - (old == null ? 0 : old.weigh(key)));
+        if (dirtyBytes.get() > maxDirtyBytes)
+            flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Unable to flush dirty keys: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Newest value of a dirty key, null if it was deleted. Compared by identity
+     */
+    private static class Dirty {
+        final String value;
+
+        Dirty(String value) {
+            this.value = value;
+        }
+
+        long weigh(String key) {
+            return key.length() + (value == null ? 0 : value.length());
+        }
+    }
+}
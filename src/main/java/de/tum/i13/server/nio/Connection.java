@@ -0,0 +1,336 @@
+package de.tum.i13.server.nio;
+
+import de.tum.i13.shared.BinaryProtocol;
+import de.tum.i13.shared.BinaryProtocol.Frame;
+import de.tum.i13.shared.BinaryProtocol.Status;
+import de.tum.i13.shared.datastructure.ActiveConnection;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Logger;
+
+/**
+ * State of one non blocking connection, only used on the thread of its EventLoop. Bytes are collected in input until
+ * a line is complete, or a frame once the client switched to the binary protocol. The requests of a connection are
+ * processed one after another, in order, on the worker pool; responses are queued in output and written as far as the
+ * socket takes them, the rest when it is writable again.
+ * <p>
+ * While MAX_PENDING requests wait, the connection is not read, so a client sending faster than it is served is
+ * slowed down by TCP instead of filling the heap.
+ */
+class Connection {
+    private static final Logger logger = Logger.getLogger(Connection.class.getName());
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_PENDING = 1024;
+    //the blocking ActiveConnection uses the default charset as well
+    private static final Charset CHARSET = Charset.defaultCharset();
+    //code of a frame that was skipped because it is too long, answered with error without a worker
+    private static final int SKIPPED = -1;
+
+    private final EventLoop loop;
+    private final SocketChannel channel;
+    private final String info;
+    SelectionKey key;
+    //in write mode between reads
+    private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Deque<ByteBuffer> output = new ArrayDeque<>();
+    //lines, or frames on a binary connection
+    private final Deque<Object> requests = new ArrayDeque<>();
+    private boolean isFirstLine = true;
+    private boolean isBinary = false;
+    //bytes of a skipped frame that did not arrive yet
+    private long skip = 0;
+    private boolean isProcessing = false;
+    private boolean isEndOfInput = false;
+
+    Connection(EventLoop loop, SocketChannel channel) {
+        this.loop = loop;
+        this.channel = channel;
+        this.info = String.valueOf(channel.socket().getRemoteSocketAddress());
+    }
+
+    void read() {
+        int count;
+        try {
+            count = channel.read(input);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (count < 0) {
+            //answer what was sent before closing
+            isEndOfInput = true;
+            setInterest(SelectionKey.OP_READ, false);
+            closeIfDone();
+            return;
+        }
+        input.flip();
+        if (isFirstLine && input.hasRemaining() && input.get(input.position()) == BinaryProtocol.HELLO) {
+            isFirstLine = false;
+            isBinary = true;
+            input.get();
+        }
+        if (isBinary) {
+            if (!decodeFrames())
+                return;
+        } else {
+            int end;
+            while ((end = indexOfNewline()) >= 0) {
+                var line = decodeLine(end);
+                if (isFirstLine) {
+                    isFirstLine = false;
+                    if (line.startsWith("this is") || line.startsWith("replica service")) {
+                        handOver(line);
+                        return;
+                    }
+                }
+                requests.add(line);
+            }
+        }
+        input.compact();
+        if (!input.hasRemaining()) {
+            //a line longer than the buffer
+            var larger = ByteBuffer.allocate(input.capacity() * 2);
+            input.flip();
+            input = larger.put(input);
+        }
+        if (requests.size() >= MAX_PENDING)
+            setInterest(SelectionKey.OP_READ, false);
+        next();
+    }
+
+    /**
+     * Queue response and write as much as possible
+     *
+     * @param response
+     */
+    void write(String response) {
+        output.add(CHARSET.encode(response + "\r\n"));
+        flush();
+    }
+
+    void write(Frame response) {
+        output.add(BinaryProtocol.encode(response));
+        flush();
+    }
+
+    void flush() {
+        try {
+            while (!output.isEmpty()) {
+                var buffer = output.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    setInterest(SelectionKey.OP_WRITE, true);
+                    return;
+                }
+                output.poll();
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        setInterest(SelectionKey.OP_WRITE, false);
+        closeIfDone();
+    }
+
+    /**
+     * Process the next request unless one is processed already. Requests the saturated workers reject are answered
+     * with server_busy right away
+     */
+    private void next() {
+        while (!isProcessing) {
+            var request = requests.poll();
+            if (request == null) {
+                closeIfDone();
+                return;
+            }
+            if (!isEndOfInput && requests.size() < MAX_PENDING)
+                setInterest(SelectionKey.OP_READ, true);
+            if (request instanceof Frame frame) {
+                if (frame.code == SKIPPED) {
+                    write(Frame.reply(Status.error, null, frame.value));
+                    continue;
+                }
+                logger.info("frame from " + info + " received, opcode " + frame.code);
+                isProcessing = loop.workers.trySubmit(() -> process(frame));
+                if (!isProcessing)
+                    write(Frame.reply(Status.server_busy, null, null));
+                continue;
+            }
+            var line = (String) request;
+            logger.info("message from " + info + " received (abbreviated): "
+                    + (line.length() <= 20 ? line : line.substring(0, 20)));
+            isProcessing = loop.workers.trySubmit(() -> process(line));
+            if (!isProcessing)
+                write("server_busy");
+        }
+    }
+
+    /**
+     * Runs on a worker, the response is written by the loop
+     */
+    private void process(String line) {
+        String response;
+        try {
+            response = loop.kv.respond(line);
+        } catch (RuntimeException e) {
+            logger.severe("Unable to process " + line + ": " + e);
+            response = "error " + e.getMessage();
+        }
+        var result = response;
+        loop.execute(() -> {
+            isProcessing = false;
+            logger.info("sending message to " + info + " : " + result);
+            write(result);
+            next();
+        });
+    }
+
+    private void process(Frame request) {
+        Frame response;
+        try {
+            response = loop.kv.respond(request);
+        } catch (RuntimeException e) {
+            logger.severe("Unable to process opcode " + request.code + ": " + e);
+            response = Frame.reply(Status.error, null, String.valueOf(e.getMessage()));
+        }
+        var result = response;
+        loop.execute(() -> {
+            isProcessing = false;
+            write(result);
+            next();
+        });
+    }
+
+    /**
+     * Move the complete frames of input to requests. A frame longer than the limits of BinaryProtocol is skipped,
+     * even if most of it has not arrived yet, and answered with error
+     *
+     * @return false if the connection was closed because of an invalid length
+     */
+    private boolean decodeFrames() {
+        while (true) {
+            var skipped = (int) Math.min(skip, input.remaining());
+            input.position(input.position() + skipped);
+            skip -= skipped;
+            if (skip > 0 || input.remaining() < BinaryProtocol.HEADER_LENGTH)
+                return true;
+            var start = input.position();
+            var code = input.get(start) & 0xff;
+            var keyLength = input.getInt(start + 1);
+            var valueLength = input.getInt(start + 5);
+            if (keyLength < -1 || valueLength < -1) {
+                logger.warning(info + " sent an invalid frame length");
+                close();
+                return false;
+            }
+            var bodyLength = (long) Math.max(0, keyLength) + Math.max(0, valueLength);
+            if (keyLength > BinaryProtocol.MAX_KEY_LENGTH || valueLength > BinaryProtocol.MAX_VALUE_LENGTH) {
+                var tooLong = new BinaryProtocol.FrameTooLongException(keyLength, valueLength);
+                logger.warning(info + " sent a " + tooLong.getMessage());
+                requests.add(new Frame(SKIPPED, null, tooLong.getMessage()));
+                input.position(start + BinaryProtocol.HEADER_LENGTH);
+                skip = bodyLength;
+                continue;
+            }
+            if (input.remaining() < BinaryProtocol.HEADER_LENGTH + bodyLength)
+                return true;
+            input.position(start + BinaryProtocol.HEADER_LENGTH);
+            requests.add(new Frame(code, decodeString(keyLength), decodeString(valueLength)));
+        }
+    }
+
+    /**
+     * @param length -1 for none
+     * @return the next length bytes of input
+     */
+    private String decodeString(int length) {
+        if (length < 0)
+            return null;
+        var value = new String(input.array(), input.arrayOffset() + input.position(), length, StandardCharsets.UTF_8);
+        input.position(input.position() + length);
+        return value;
+    }
+
+    /**
+     * Give a data transfer or replica stream of another server to the blocking handlers, with the bytes that were
+     * already read after its first line
+     *
+     * @param firstLine
+     */
+    private void handOver(String firstLine) {
+        var leftover = new byte[input.remaining()];
+        input.get(leftover);
+        key.cancel();
+        //the cancelled key is only deregistered by the next select, after that the channel may block again
+        loop.execute(() -> {
+            try {
+                channel.configureBlocking(true);
+                for (var buffer : output)
+                    channel.write(buffer);
+                output.clear();
+                var socket = channel.socket();
+                var in = new SequenceInputStream(new ByteArrayInputStream(leftover), socket.getInputStream());
+                var ac = new ActiveConnection(socket, new PrintWriter(new OutputStreamWriter(socket.getOutputStream())),
+                        new BufferedReader(new InputStreamReader(in)));
+                loop.kv.serveBlocking(ac, firstLine);
+            } catch (IOException e) {
+                logger.severe("Unable to hand over " + info + ": " + e.getMessage());
+                EventLoop.closeQuietly(channel);
+            }
+        });
+    }
+
+    private int indexOfNewline() {
+        for (int i = input.position(); i < input.limit(); i++)
+            if (input.get(i) == '\n')
+                return i;
+        return -1;
+    }
+
+    /**
+     * @param end index of the newline
+     * @return line without \r\n, input is positioned after it
+     */
+    private String decodeLine(int end) {
+        var length = end - input.position();
+        if (length > 0 && input.get(end - 1) == '\r')
+            length--;
+        var bytes = new byte[length];
+        input.get(bytes);
+        input.position(end + 1);
+        return new String(bytes, CHARSET);
+    }
+
+    private void setInterest(int operation, boolean isOn) {
+        if (!key.isValid())
+            return;
+        var ops = key.interestOps();
+        key.interestOps(isOn ? ops | operation : ops & ~operation);
+    }
+
+    private void closeIfDone() {
+        if (isEndOfInput && !isProcessing && requests.isEmpty() && output.isEmpty())
+            close();
+    }
+
+    private void close() {
+        if (!channel.isOpen())
+            return;
+        key.cancel();
+        EventLoop.closeQuietly(channel);
+        logger.info("closed one client connection");
+    }
+}
@@ -0,0 +1,101 @@
+package de.tum.i13.server.nio;
+
+import de.tum.i13.server.threadperconnection.BoundedExecutor;
+import de.tum.i13.server.threadperconnection.KVServer;
+
+import java.io.IOException;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * One selector thread. Everything that touches its Connections runs on it: other threads hand over work with
+ * execute, which queues the task and wakes the selector up.
+ */
+class EventLoop implements Runnable {
+    private static final Logger logger = Logger.getLogger(EventLoop.class.getName());
+
+    final KVServer kv;
+    final BoundedExecutor workers;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    EventLoop(KVServer kv, BoundedExecutor workers) throws IOException {
+        this.kv = kv;
+        this.workers = workers;
+        this.selector = Selector.open();
+    }
+
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                var connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connection.write(kv.welcomeMessage());
+            } catch (IOException e) {
+                logger.severe("Unable to register " + channel + ": " + e.getMessage());
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * Run task on this loop
+     *
+     * @param task
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                logger.severe(e.getMessage());
+                continue;
+            }
+            Runnable task;
+            while ((task = tasks.poll()) != null)
+                task.run();
+            var selected = selector.selectedKeys().iterator();
+            while (selected.hasNext()) {
+                var key = selected.next();
+                selected.remove();
+                var connection = (Connection) key.attachment();
+                if (key.isValid() && key.isWritable())
+                    connection.flush();
+                if (key.isValid() && key.isReadable())
+                    connection.read();
+            }
+        }
+        for (var key : selector.keys())
+            closeQuietly(key.channel());
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package de.tum.i13.server.nio;
+
+import de.tum.i13.server.threadperconnection.BoundedExecutor;
+import de.tum.i13.server.threadperconnection.KVServer;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Logger;
+
+/**
+ * Event loop mode of the KVServer, for many more client connections than threads. The accepting thread hands every
+ * new connection to one of a few EventLoops in turn, each one a thread with a Selector over non blocking
+ * SocketChannels. A loop only moves bytes and splits lines, the requests themselves run on the worker pool, so a
+ * slow disk never stalls the other connections of a loop. When all workers are busy and their queue is full, a request
+ * is answered with server_busy.
+ * <p>
+ * The text protocol is the same as with a thread per connection, and connections switching to the binary protocol have
+ * their frames decoded by the loops as well. Data transfers and replica streams from other servers are handed back to
+ * the blocking handlers after their first line.
+ */
+public class NioServer {
+    private static final Logger logger = Logger.getLogger(NioServer.class.getName());
+
+    private final KVServer kv;
+    private final EventLoop[] loops;
+    private final BoundedExecutor workers;
+
+    /**
+     * @param kv
+     * @param loops   number of event loop threads
+     * @param workers threads processing requests
+     */
+    public NioServer(KVServer kv, int loops, BoundedExecutor workers) throws IOException {
+        this.kv = kv;
+        this.workers = workers;
+        this.loops = new EventLoop[loops];
+        for (int i = 0; i < loops; i++)
+            this.loops[i] = new EventLoop(kv, this.workers);
+    }
+
+    /**
+     * Accept connections until the server stops or the channel is closed
+     *
+     * @param server bound, in blocking mode
+     */
+    public void serve(ServerSocketChannel server) {
+        for (int i = 0; i < loops.length; i++) {
+            var t = new Thread(loops[i], "nio-loop-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        logger.info(String.format("serving with %d event loops", loops.length));
+        var next = 0;
+        while (kv.getRunning()) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                logger.severe(e.getMessage());
+                continue;
+            }
+            logger.info("One connection established: " + channel.socket().getRemoteSocketAddress());
+            loops[next].register(channel);
+            next = (next + 1) % loops.length;
+        }
+        close();
+    }
+
+    public void close() {
+        for (var loop : loops)
+            loop.close();
+        workers.shutdown();
+    }
+}
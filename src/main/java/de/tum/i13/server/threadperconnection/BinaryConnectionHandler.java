@@ -0,0 +1,68 @@
+package de.tum.i13.server.threadperconnection;
+
+import de.tum.i13.shared.BinaryProtocol;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+/**
+ * A client connection that switched to the binary protocol. Frames are answered in order; like the text handler it
+ * only flushes once no further request has arrived, so pipelined requests are answered in one batch.
+ */
+class BinaryConnectionHandler {
+    private final KVServer kv;
+    private final Socket socket;
+    private final InputStream input;
+
+    /**
+     * @param kv
+     * @param socket
+     * @param input  the connection after the welcome line, starting with BinaryProtocol.HELLO
+     */
+    BinaryConnectionHandler(KVServer kv, Socket socket, InputStream input) {
+        this.kv = kv;
+        this.socket = socket;
+        this.input = input;
+    }
+
+    void handle() {
+        var logger = KVServer.logger;
+        logger.info("binary protocol on " + socket.getRemoteSocketAddress());
+        try (socket) {
+            var reader = new BinaryProtocol.FrameReader(input);
+            var output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            reader.readHello();
+            while (true) {
+                BinaryProtocol.Frame response;
+                try {
+                    var request = reader.read();
+                    if (request == null)
+                        break;
+                    response = respond(request);
+                } catch (BinaryProtocol.FrameTooLongException e) {
+                    logger.warning(socket.getRemoteSocketAddress() + " sent a " + e.getMessage());
+                    response = BinaryProtocol.Frame.reply(BinaryProtocol.Status.error, null, e.getMessage());
+                }
+                BinaryProtocol.write(output, response);
+                if (!reader.ready())
+                    output.flush();
+            }
+            output.flush();
+        } catch (IOException e) {
+            logger.info("binary connection failed: " + e.getMessage());
+        }
+        logger.info("closed one binary client connection");
+    }
+
+    private BinaryProtocol.Frame respond(BinaryProtocol.Frame request) {
+        try {
+            return kv.respondBounded(request);
+        } catch (RuntimeException e) {
+            KVServer.logger.severe("Unable to process opcode " + request.code + ": " + e);
+            return BinaryProtocol.Frame.reply(BinaryProtocol.Status.error, null, String.valueOf(e.getMessage()));
+        }
+    }
+}
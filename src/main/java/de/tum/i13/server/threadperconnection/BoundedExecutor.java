@@ -0,0 +1,107 @@
+package de.tum.i13.server.threadperconnection;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of threads with a bounded queue of waiting tasks. A task that finds every thread busy and the queue
+ * full is rejected instead of waiting, so the server can answer server_busy at once and an overload neither piles up
+ * threads nor memory. Rejections are counted.
+ * <p>
+ * With virtual threads the pool still bounds how many tasks run at once, the threads themselves are cheap.
+ */
+public class BoundedExecutor {
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final LongAdder rejected = new LongAdder();
+
+    public BoundedExecutor(String name, int threads, int queueCapacity) {
+        this(name, threads, queueCapacity, false);
+    }
+
+    /**
+     * @param name          prefix of the thread names
+     * @param threads       number of threads
+     * @param queueCapacity number of tasks that may wait for a thread
+     * @param isVirtual     run the tasks on virtual threads
+     */
+    public BoundedExecutor(String name, int threads, int queueCapacity, boolean isVirtual) {
+        this.queueCapacity = queueCapacity;
+        var count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            var threadName = name + "-" + count.incrementAndGet();
+            return isVirtual ? Thread.ofVirtual().name(threadName).unstarted(r)
+                    : Thread.ofPlatform().name(threadName).daemon(true).unstarted(r);
+        });
+    }
+
+    /**
+     * @param task
+     * @return false if the task was rejected because the server is saturated
+     */
+    public boolean trySubmit(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return false;
+        }
+    }
+
+    /**
+     * Run task on a thread of the pool and wait for its result, for a connection that reads its requests on a thread
+     * of its own
+     *
+     * @param task
+     * @param busy result if the task was rejected
+     * @return the result of task, busy if the server is saturated
+     */
+    public <T> T call(Supplier<T> task, T busy) {
+        var future = new FutureTask<>(task::get);
+        if (!trySubmit(future))
+            return busy;
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return busy;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("workers=%d active=%d queued=%d queueCapacity=%d rejected=%d",
+                executor.getMaximumPoolSize(), getActiveCount(), getQueueDepth(), queueCapacity, getRejected());
+    }
+}
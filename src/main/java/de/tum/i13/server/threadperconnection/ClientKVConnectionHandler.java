@@ -16,7 +16,6 @@ class ClientKVConnectionHandler {
     
     void handle() {
         var logger = KVServer.logger;
-        var cp = connectionThread.kv.getLogic();
         var kv = connectionThread.kv;
         do {
             if (line.length() <= 20) {
@@ -24,18 +23,12 @@ class ClientKVConnectionHandler {
             } else {
                 logger.info("message from " + ac.getInfo() + " received (abbreviated): " + line.substring(0, 20));
             }
-            String res;
-            if (connectionThread.kv.getServersMetaData() == null) {
-                //Server just connected to ECS and in balancing period
-                res = "server_stopped";
-            } else if (line.startsWith("put") && kv.isWriteLock()) {
-                res = "server_write_lock";
-            } else {
-                //main processing happens here
-                res = cp.process(line);
-            }
+            String res = kv.respondBounded(line);
             logger.info("sending message to " + ac.getInfo() + " : " + res);
-            ac.writeln(res);
+            //pipelined requests: answer the ones already received in one batch, flush once the client waits
+            ac.write(res);
+            if (!ac.ready())
+                ac.flush();
             line = ac.readLine();
         } while (line != null);
         logger.info("closed one client connection");
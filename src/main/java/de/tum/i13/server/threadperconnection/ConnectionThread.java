@@ -1,15 +1,31 @@
 package de.tum.i13.server.threadperconnection;
 
+import de.tum.i13.shared.BinaryProtocol;
 import de.tum.i13.shared.datastructure.ActiveConnection;
 import de.tum.i13.shared.datastructure.ServerData;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.List;
 
 class ConnectionThread implements Runnable {
     final KVServer kv;
     private final Socket clientSocket;
+    //set once the welcome line was exchanged, by handshake or elsewhere, e.g. by the event loop
+    private ActiveConnection ac;
+    private String firstLine;
+    private InputStream input;
+    //set instead of firstLine if the client switched to the binary protocol
+    private InputStream binaryInput;
+    //the handshake timed out before the first line
+    private boolean isIdle;
     
     public ConnectionThread(KVServer kv, Socket clientSocket) {
         this.kv = kv;
@@ -17,30 +33,105 @@ class ConnectionThread implements Runnable {
     }
     
     /**
-     * distributor to appropriate handler
+     * @param kv
+     * @param ac        connection that already got the welcome line
+     * @param firstLine the first line ac sent
      */
-    @Override
-    public void run() {
+    ConnectionThread(KVServer kv, ActiveConnection ac, String firstLine) {
+        this.kv = kv;
+        this.clientSocket = ac.socket;
+        this.ac = ac;
+        this.firstLine = firstLine;
+    }
+
+    /**
+     * Send the welcome line and wait for the answer: the first line, or the start of the binary protocol
+     *
+     * @param timeout ms to wait for the answer, 0 for no limit. A client that sends nothing within timeout has no
+     *                first line yet, run reads it later
+     * @return false if the connection is closed
+     */
+    boolean handshake(int timeout) {
         var logger = KVServer.logger;
         logger.info("One connection established: " + clientSocket.getRemoteSocketAddress());
-        ActiveConnection ac;
         try {
-            ac = new ActiveConnection(clientSocket); //clientSocket is not null so this should return;
+            //buffered below the reader, so the first byte can be checked for the binary protocol
+            input = new BufferedInputStream(clientSocket.getInputStream());
+            ac = new ActiveConnection(clientSocket, new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream())),
+                    new BufferedReader(new InputStreamReader(input)));
         } catch (IOException e) {
             e.printStackTrace();
-            return;
+            return false;
         }
         if (kv.getServerData() == null) {
             logger.info("kv server data is null");
-            return;
+            return false;
+        }
+        ac.writeln(kv.welcomeMessage());
+        try {
+            clientSocket.setSoTimeout(timeout);
+            try {
+                return readFirst();
+            } catch (SocketTimeoutException e) {
+                //an idle client, e.g. one typing its first request
+                isIdle = true;
+                return true;
+            } finally {
+                clientSocket.setSoTimeout(0);
+            }
+        } catch (IOException e) {
+            ac.close();
+            logger.info("handshake failed: " + e.getMessage());
+            return false;
         }
-        ac.writeln("Connection to Key-Value PUT/GET server established: " + kv.getServerData().getServerIp().toString() + ":" + kv.getServerData().getClientPort());
-        String firstLine = ac.readLine();
+    }
+
+    /**
+     * Read the first line, or only check for the start of the binary protocol
+     *
+     * @return false if the connection is closed
+     * @throws SocketTimeoutException if the first byte does not arrive within the timeout of the socket
+     */
+    private boolean readFirst() throws IOException {
+        input.mark(1);
+        var first = input.read();
+        input.reset();
+        if (first == BinaryProtocol.HELLO) {
+            binaryInput = input;
+            return true;
+        }
+        //a line that starts but does not end within the timeout fails the connection
+        firstLine = first < 0 ? null : ac.readLine();
         if (firstLine == null) {
             ac.close();
-            logger.severe("The other server/client closed connection");
+            KVServer.logger.severe("The other server/client closed connection");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * distributor to appropriate handler
+     */
+    @Override
+    public void run() {
+        if (ac == null && !handshake(0))
+            return;
+        if (isIdle) {
+            isIdle = false;
+            try {
+                if (!readFirst())
+                    return;
+            } catch (IOException e) {
+                ac.close();
+                return;
+            }
+        }
+        if (binaryInput != null) {
+            new BinaryConnectionHandler(kv, clientSocket, binaryInput).handle();
             return;
         }
+        var logger = KVServer.logger;
         if (firstLine.startsWith("this is")) {
             //this is kv contacting for data transfer
             String[] parts = firstLine.split(" ");
@@ -59,7 +150,11 @@ class ConnectionThread implements Runnable {
                     isServerOnRing = true;
             }
             if (isServerOnRing) {
-                kv.kvRepService.handleReplicaRequest(ac);
+                //older servers do not name themselves, then only their address is known
+                var source = firstLine.length() > "replica service ".length()
+                        ? firstLine.substring("replica service ".length()).trim()
+                        : ac.getAddress().getHostAddress();
+                kv.kvRepService.handleReplicaRequest(ac, source);
             } else {
                 logger.info("Unauthorised connection!");
                 ac.writeln("Unauthorised!");
@@ -1,5 +1,6 @@
 package de.tum.i13.server.threadperconnection;
 
+import de.tum.i13.shared.BinaryProtocol;
 import de.tum.i13.shared.ECSProtocol;
 import de.tum.i13.shared.datastructure.ActiveConnection;
 import de.tum.i13.shared.datastructure.ServerData;
@@ -141,6 +142,7 @@ public class ECSCommunicationThread extends Thread {
         String ret;
         connection.writeln("this is " + kvServer.getServerData().getServerIp().getHostAddress()
                 + ":" + kvServer.getServerData().getClientPort());
+        var received = new ArrayList<String>();
         while ((ret = connection.readLine()) != null) {
             logger.info("received: " + ret);
             if (ret.equals("confirm end transfer")) {
@@ -153,9 +155,11 @@ public class ECSCommunicationThread extends Thread {
             String[] put = ret.split(" ");
             if (put.length > 2 && put[0].equals("put")) {
                 try {
-                    var valueString = String.join(" ",
-                            Stream.of(put).skip(2).toArray(String[]::new));
-                    kvServer.getDatabase().put(put[1], valueString);
+                    var valueString = BinaryProtocol.unescapeLine(String.join(" ",
+                            Stream.of(put).skip(2).toArray(String[]::new)));
+                    //a transfer reads like a scan, it must not displace the keys our clients use
+                    kvServer.getDatabase().putUncached(put[1], valueString);
+                    received.add(put[1]);
                 } catch (IOException e) {
                     logger.info("Unable to put the value: " + ret);
                 }
@@ -165,6 +169,8 @@ public class ECSCommunicationThread extends Thread {
         }
         logger.info("Finished receiving data protocol");
         connection.close();
+        if (kvServer.isWarmTransfers())
+            kvServer.getDatabase().warm(received);
 
         logger.info("sending confirm transfer to the ecs");
         ecsConnection.writeln("confirm transfer");//message to the ECS,
@@ -1,7 +1,7 @@
 package de.tum.i13.server.threadperconnection;
 
 import de.tum.i13.server.kv.Database;
-import de.tum.i13.shared.Hash;
+import de.tum.i13.shared.BinaryProtocol;
 import de.tum.i13.shared.datastructure.ActiveConnection;
 import de.tum.i13.shared.datastructure.ServerData;
 
@@ -48,22 +48,20 @@ class KVKVConnectionHandler {
             //We synchronize this whole block because otherwise it may lead to inconsistent state of write lock if it breaks middle of the thread
             kvServer.setWriteLock(true);
             Database store = kvServer.getDatabase();
-            //Get the smallest hash from the database that is larger than its first hash
-            for (String key : store.keySet()) {
-                var hashKey = (new Hash(key)).md5Value;
-                if (hashKey.compareTo(serverData.getLastHash()) <= 0 && hashKey.compareTo(serverData.getFirstHash()) >= 0) {
-                    try {
-                        var value = store.get(key);
-                        value = value.replaceAll("\n", "  ");
-                        logger.info(String.format("Transfering key : %s", key));
-                        ac.writeln(String.format("put %s %s", key, value));
-                        store.delete(key);
-                    } catch (FileNotFoundException e) {
-                        //This should never happen because our file is from keySet() call
-                        logger.info(String.format("failed to delete file: %s, possibly because" +
-                                " we are " +
-                                "on Windows", key));
-                    }
+            //write back mode: the receiving server has to get what is only dirty in memory so far
+            store.flush();
+            //Only the keys whose hash is in the range of the receiving server
+            for (String key : store.keySet(serverData.getFirstHash(), serverData.getLastHash())) {
+                try {
+                    var value = BinaryProtocol.escapeLine(store.get(key));
+                    logger.info(String.format("Transfering key : %s", key));
+                    ac.writeln(String.format("put %s %s", key, value));
+                    store.delete(key);
+                } catch (FileNotFoundException e) {
+                    //This should never happen because our file is from keySet() call
+                    logger.info(String.format("failed to delete file: %s, possibly because" +
+                            " we are " +
+                            "on Windows", key));
                 }
             }
             ac.writeln("confirm end transfer");
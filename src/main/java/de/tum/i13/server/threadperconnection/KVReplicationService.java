@@ -1,5 +1,6 @@
 package de.tum.i13.server.threadperconnection;
 
+import de.tum.i13.shared.BinaryProtocol;
 import de.tum.i13.shared.datastructure.ActiveConnection;
 import de.tum.i13.shared.datastructure.ServerData;
 
@@ -103,7 +104,9 @@ public class KVReplicationService implements Runnable {
         }
         logger.info("Reading the welcome message from the replica server");
         logger.info(ac.readLine()); //skip the welcome message
-        ac.writeln("replica service"); //inform the other server that this connection is for the replica service
+        //inform the other server that this connection is for the replica service and whose replicas it carries
+        ac.writeln(String.format("replica service %s:%d", kv.getServerData().getServerIp().getHostAddress(),
+                kv.getServerData().getClientPort()));
         //Transfer all the avalailable data to the other server
         var keysCurrently = kv.getDatabase().keySet();
         var store = kv.getDatabase();
@@ -114,7 +117,7 @@ public class KVReplicationService implements Runnable {
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
             }
-            ac.writeln(String.format("put %s %s", key, value));
+            ac.writeln(String.format("put %s %s", key, BinaryProtocol.escapeLine(value)));
         }
         logger.info("Finished transfer initial data to replicas");
         return ac;
@@ -124,11 +127,15 @@ public class KVReplicationService implements Runnable {
      * This is called by the ConnectionThread class to handle transfer request for replica
      * The template should be similar to ClientKVConnectionHandler minus a few part
      * It may look like it but this method is actually running in its own thread, forwarded by ConnectionThread
+     * The source sends all of its data on a new connection, so its old replicas are dropped first
+     *
+     * @param source server whose replicas this connection carries, e.g. 127.0.0.1:5153
      */
-    public void handleReplicaRequest(ActiveConnection ac) {
+    public void handleReplicaRequest(ActiveConnection ac, String source) {
         var store = kv.getDatabase();
         assert store != null;
-        logger.info("Handling replica request from " + ac);
+        logger.info("Handling replica request from " + source);
+        store.dropReplicasOf(source);
         String line;
         while ((line = ac.readLine()) != null) {
             assert line.matches("(put|delete) (?<key>\\S+) (?<value>.*)");
@@ -139,7 +146,7 @@ public class KVReplicationService implements Runnable {
             switch (matcher.group("command")) {
                 case "put":
                     try {
-                        store.putReplica(matcher.group("key"), matcher.group("value"));
+                        store.putReplica(source, matcher.group("key"), BinaryProtocol.unescapeLine(matcher.group("value")));
                     } catch (IOException e) {
                         logger.severe("Can't replicate some string");
                     }
@@ -2,6 +2,10 @@ package de.tum.i13.server.threadperconnection;
 
 import de.tum.i13.server.kv.Database;
 import de.tum.i13.server.kv.KVCommandProcessor;
+import de.tum.i13.server.nio.NioServer;
+import de.tum.i13.shared.BinaryProtocol;
+import de.tum.i13.shared.BinaryProtocol.Frame;
+import de.tum.i13.shared.BinaryProtocol.Status;
 import de.tum.i13.shared.Config;
 import de.tum.i13.shared.datastructure.ActiveConnection;
 import de.tum.i13.shared.datastructure.ServerData;
@@ -9,7 +13,9 @@ import de.tum.i13.shared.datastructure.ServerSet;
 import de.tum.i13.shared.datastructure.SubscriptionInformation;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -38,6 +44,13 @@ public class KVServer {
     private KVCommandProcessor logic;
     private Database database;
     private boolean writeLock = false;
+    private boolean warmTransfers = true;
+    //null if every connection gets its own thread, package-private for tests
+    BoundedExecutor workers;
+    //welcome lines and first lines with -mc
+    BoundedExecutor handshakes;
+    int handshakeTimeout = 1000;
+    private boolean virtualThreads = false;
     private ServerSet replicaData;
     private Map<String, SubscriptionInformation> subscriptions = new HashMap<>();
     //TODO save updates for offline subscribers
@@ -68,14 +81,30 @@ public class KVServer {
             System.out.println("-l  Logfile             default: server.log");
             System.out.println("-ll LogLevel            default: INFO");
             System.out.println("-c  Sets the cacheSize, e.g., 100 keys              default: INFO");
-            System.out.println("-s  Sets the cache displacement strategy, FIFO, LRU, LFU         " +
+            System.out.println("-s  Sets the cache displacement strategy, FIFO, LRU, LFU, TINYLFU, ARC" +
                     "       default: FIFO");
+            System.out.println("-cm Sets a byte budget for the cache instead of -c keys, e.g., 512m          default: 0");
+            System.out.println("-l2 Sets the direct memory of the off heap second level cache, e.g., 16g      default: 0");
+            System.out.println("-wb Sets the write back flush interval in ms and dirty limit, e.g., 100:64m   default: off");
+            System.out.println("-wu Sets the interval in s of the hot key snapshot warming the cache, 0 off   default: 0");
+            System.out.println("-wt Prefetches keys received from another server into the free room of the cache   default: true");
+            System.out.println("-nio Sets the number of selector event loops, 0 for a thread per connection   default: 0");
+            System.out.println("-nw Sets the number of worker threads of the event loops             default: 16");
+            System.out.println("-mc Sets the number of threads processing requests, 0 for a thread per connection   default: 0");
+            System.out.println("-q  Sets the queue of requests waiting for a thread, then server_busy   default: 1000");
+            System.out.println("-vt Runs connections on virtual threads, true or false               default: false");
+            System.out.println("-e  Sets the storage engine, FILE, LOG or LSM             default: FILE");
+            System.out.println("-fs Sets when the write ahead log is synced, always, os or an interval in ms        " +
+                    "default: os");
+            System.out.println("-z  Compresses stored values, none or deflate[:minimum size in bytes]          " +
+                    "default: none");
             System.out.println("-h  displays this help-message");
             System.out.println("The server will not be started, when using the help option");
             return;
         }
 
-        final ServerSocket serverSocket = new ServerSocket();
+        //the event loops accept from a channel, its socket is bound and closed the same way
+        final ServerSocket serverSocket = cfg.nioloops > 0 ? ServerSocketChannel.open().socket() : new ServerSocket();
 
         logger.info("KVServer started!\n" +
                 "Configuration:\n" +
@@ -86,7 +115,20 @@ public class KVServer {
                 "logfile:               " + cfg.logfile.toString() + "\n" +
                 "log-Level:             " + cfg.loglevel + "\n" +
                 "cache Size:            " + cfg.cachesize + "\n" +
-                "cache Displacement:    " + cfg.cachedisplacement + "\n\n");
+                "cache Displacement:    " + cfg.cachedisplacement + "\n" +
+                "cache memory:          " + cfg.cachememory + "\n" +
+                "off heap cache:        " + cfg.offheapmemory + "\n" +
+                "write back:            " + cfg.writeback + "\n" +
+                "warm up snapshot:      " + cfg.warmupinterval + "\n" +
+                "warm transfers:        " + cfg.warmtransfers + "\n" +
+                "event loops:           " + cfg.nioloops + "\n" +
+                "event loop workers:    " + cfg.nioworkers + "\n" +
+                "request threads:       " + cfg.maxconnections + "\n" +
+                "queue size:            " + cfg.queuesize + "\n" +
+                "virtual threads:       " + cfg.virtualthreads + "\n" +
+                "storage engine:        " + cfg.storageengine + "\n" +
+                "fsync policy:          " + cfg.fsync + "\n" +
+                "compression:           " + cfg.compression + "\n\n");
 
         //bind to localhost only
         try {
@@ -98,8 +140,11 @@ public class KVServer {
 
         setServerData(new ServerData(InetAddress.getByName(cfg.listenaddr), cfg.port));
 
-        database = new Database(cfg.cachesize,
-                cfg.cachedisplacement, cfg.dataDir);
+        database = new Database(cfg);
+        if (cfg.warmupinterval > 0)
+            database.startWarmer(cfg.warmupinterval);
+        warmTransfers = cfg.warmtransfers;
+        virtualThreads = cfg.virtualthreads;
         logic = new KVCommandProcessor(database, this, ecsCommunicationThread);
 
 
@@ -121,6 +166,7 @@ public class KVServer {
             } catch (InterruptedException e) {
                 e.printStackTrace();
             } finally {
+                database.close();
                 try {
                     serverSocket.close();
                     logger.info("KVServer main thread shut down");
@@ -131,6 +177,15 @@ public class KVServer {
         }));
 
         logger.info("entering main loop");
+        if (cfg.nioloops > 0) {
+            workers = new BoundedExecutor("nio-worker", cfg.nioworkers, cfg.queuesize);
+            new NioServer(this, cfg.nioloops, workers).serve(serverSocket.getChannel());
+            return;
+        }
+        if (cfg.maxconnections > 0) {
+            workers = new BoundedExecutor("request", cfg.maxconnections, cfg.queuesize, virtualThreads);
+            handshakes = new BoundedExecutor("handshake", cfg.maxconnections, cfg.queuesize, virtualThreads);
+        }
         while (this.running) {
             Socket clientSocket;
             try {
@@ -141,13 +196,54 @@ public class KVServer {
                 continue;
             }
             //When we accept a connection, we start a new Thread for this connection
-            if (clientSocket != null) {
-                Thread th = new Thread(new ConnectionThread(this, clientSocket));
-                th.start();
+            if (clientSocket != null)
+                accept(clientSocket);
+        }
+    }
+
+    /**
+     * Start serving an accepted connection. With -mc the welcome line and the first line are exchanged on the bounded
+     * handshake threads, each waiting at most handshakeTimeout for the first line; if those are saturated as well the
+     * connection gets server_busy after its welcome line and is closed
+     *
+     * @param clientSocket
+     */
+    void accept(Socket clientSocket) {
+        if (workers == null) {
+            startConnectionThread(new ConnectionThread(this, clientSocket));
+        } else if (!handshakes.trySubmit(() -> admit(clientSocket))) {
+            logger.warning("Rejecting " + clientSocket.getRemoteSocketAddress() + ", handshakes " + handshakes);
+            try (clientSocket) {
+                var output = clientSocket.getOutputStream();
+                output.write((welcomeMessage() + "\r\nserver_busy\r\n").getBytes());
+                output.flush();
+            } catch (IOException ignored) {
             }
         }
     }
 
+    /**
+     * Admission control of -mc: the bounded threads process requests, not connections. A client connection reads its
+     * requests on a virtual thread of its own, which only parks while the client is idle, and waits for a worker per
+     * request; a request that finds the workers saturated is answered with server_busy and the connection stays open.
+     * Data transfers and replica streams of other servers are handled on their thread directly, they must neither wait
+     * behind clients nor be refused, the other server does not understand server_busy.
+     *
+     * @param clientSocket accepted connection, runs on a handshake thread
+     */
+    void admit(Socket clientSocket) {
+        var connection = new ConnectionThread(this, clientSocket);
+        if (connection.handshake(handshakeTimeout))
+            Thread.ofVirtual().name("connection").start(connection);
+    }
+
+    /**
+     * @return threads and queue of the requests, null if every connection processes its own
+     */
+    public BoundedExecutor getWorkers() {
+        return workers;
+    }
+
     public synchronized boolean isWriteLock() {
 
         return writeLock;
@@ -196,11 +292,100 @@ public class KVServer {
         return database;
     }
 
+    /**
+     * @return true if keys received from another server are prefetched into the cache after the transfer
+     */
+    public boolean isWarmTransfers() {
+        return warmTransfers;
+    }
+
     public KVCommandProcessor getLogic() {
 
         return logic;
     }
 
+    /**
+     * @return first line a server sends on every new connection
+     */
+    public String welcomeMessage() {
+        return "Connection to Key-Value PUT/GET server established: " + getServerData().getServerIp().toString() + ":"
+                + getServerData().getClientPort();
+    }
+
+    /**
+     * Answer one request of a client connection
+     *
+     * @param line request
+     * @return response
+     */
+    public String respond(String line) {
+        if (getServersMetaData() == null) {
+            //Server just connected to ECS and in balancing period
+            return "server_stopped";
+        } else if (line.startsWith("put") && isWriteLock()) {
+            return "server_write_lock";
+        }
+        //main processing happens here
+        return logic.process(line);
+    }
+
+    /**
+     * Answer one request of a connection reading on its own thread, on the bounded workers if there are any
+     *
+     * @param line request
+     * @return response, server_busy if the workers are saturated
+     */
+    String respondBounded(String line) {
+        return workers == null ? respond(line) : workers.call(() -> respond(line), "server_busy");
+    }
+
+    /**
+     * Answer one request of a connection speaking the binary protocol
+     *
+     * @param request
+     * @return response
+     */
+    public Frame respond(Frame request) {
+        if (getServersMetaData() == null) {
+            return Frame.reply(Status.server_stopped, null, null);
+        } else if (request.code == BinaryProtocol.PUT && isWriteLock()) {
+            return Frame.reply(Status.server_write_lock, null, null);
+        }
+        return logic.process(request);
+    }
+
+    /**
+     * @param request
+     * @return response, server_busy if the workers are saturated
+     * @see #respondBounded(String)
+     */
+    Frame respondBounded(Frame request) {
+        return workers == null ? respond(request)
+                : workers.call(() -> respond(request), Frame.reply(Status.server_busy, null, null));
+    }
+
+    /**
+     * Handle a connection whose welcome line was exchanged elsewhere on its own thread, with the blocking handlers,
+     * e.g. a data transfer or replica stream that reached the event loop
+     *
+     * @param ac
+     * @param firstLine first line ac sent
+     */
+    public void serveBlocking(ActiveConnection ac, String firstLine) {
+        startConnectionThread(new ConnectionThread(this, ac, firstLine));
+    }
+
+    /**
+     * Start a thread for one connection, a virtual one with -vt. The handlers block in ActiveConnection.readLine,
+     * on a virtual thread that only parks it and frees its carrier for the other connections
+     */
+    private void startConnectionThread(Runnable connection) {
+        if (virtualThreads)
+            Thread.ofVirtual().name("connection").start(connection);
+        else
+            new Thread(connection).start();
+    }
+
     synchronized public boolean isRunning() {
         return running;
     }
@@ -0,0 +1,241 @@
+package de.tum.i13.shared;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Length prefixed framing on the client port, next to the text protocol. A client switches a connection to it by
+ * sending HELLO as the first byte after the welcome line; from then on both sides exchange frames:
+ * <pre>
+ * code (1 byte) | key length (int) | value length (int) | key bytes | value bytes
+ * </pre>
+ * A request carries an opcode, a response a Status. A length of -1 means no key or no value. Key and value are UTF-8,
+ * like the text protocol, so a value written over either protocol reads back the same; newlines are allowed. A frame
+ * with a key longer than MAX_KEY_LENGTH or a value longer than MAX_VALUE_LENGTH bytes is skipped, never buffered.
+ */
+public class BinaryProtocol {
+    public static final int HELLO = 0;
+    public static final int PUT = 1;
+    public static final int GET = 2;
+    public static final int DELETE = 3;
+    public static final int KEYRANGE = 4;
+    //the protocol allows keys of 20 and values of 120000 bytes, the rest is slack, e.g. for keyrange responses
+    public static final int MAX_KEY_LENGTH = 256;
+    public static final int MAX_VALUE_LENGTH = 128 * 1024;
+    //code and the two lengths
+    public static final int HEADER_LENGTH = 9;
+
+    /**
+     * Response codes, named like the words of the text protocol. The ordinal is the code on the wire, only append
+     */
+    public enum Status {
+        put_success, put_update, put_error, get_success, get_error, delete_success, delete_error, keyrange_success,
+        server_not_responsible, server_write_lock, server_stopped, server_busy, error;
+
+        private static final Status[] STATUSES = values();
+
+        public static Status of(int code) {
+            return code >= 0 && code < STATUSES.length ? STATUSES[code] : error;
+        }
+    }
+
+    public static class Frame {
+        public final int code;
+        public final String key;
+        public final String value;
+
+        public Frame(int code, String key, String value) {
+            this.code = code;
+            this.key = key;
+            this.value = value;
+        }
+
+        public static Frame reply(Status status, String key, String value) {
+            return new Frame(status.ordinal(), key, value);
+        }
+
+        public Status getStatus() {
+            return Status.of(code);
+        }
+
+        /**
+         * @return a response as the text protocol would send it, values unchanged
+         */
+        @Override
+        public String toString() {
+            var line = new StringBuilder(getStatus().name());
+            if (key != null)
+                line.append(' ').append(key);
+            if (value != null)
+                line.append(' ').append(value);
+            return line.toString();
+        }
+    }
+
+    /**
+     * A frame whose key or value is too long, it was skipped and the next frame may be read
+     */
+    public static class FrameTooLongException extends IOException {
+        public FrameTooLongException(int keyLength, int valueLength) {
+            super(String.format("frame too long, key %d bytes, value %d bytes", keyLength, valueLength));
+        }
+    }
+
+    /**
+     * Reads frames into one reused buffer, only key and value become Strings
+     */
+    public static class FrameReader {
+        private final DataInputStream input;
+        private byte[] buffer = new byte[1024];
+
+        public FrameReader(InputStream input) {
+            this.input = new DataInputStream(input instanceof BufferedInputStream ? input
+                    : new BufferedInputStream(input));
+        }
+
+        /**
+         * @return the next frame, null at the end of the stream
+         * @throws FrameTooLongException if key or value exceed their maximum length, the frame is skipped
+         * @throws IOException           if the stream ends inside a frame or a length is invalid
+         */
+        public Frame read() throws IOException {
+            var code = input.read();
+            if (code < 0)
+                return null;
+            var keyLength = checkLength(input.readInt());
+            var valueLength = checkLength(input.readInt());
+            if (keyLength > MAX_KEY_LENGTH || valueLength > MAX_VALUE_LENGTH) {
+                input.skipNBytes((long) Math.max(0, keyLength) + Math.max(0, valueLength));
+                throw new FrameTooLongException(keyLength, valueLength);
+            }
+            return new Frame(code, readString(keyLength), readString(valueLength));
+        }
+
+        /**
+         * @return true if a read finds a frame that already arrived, e.g. the next one of pipelined requests
+         */
+        public boolean ready() throws IOException {
+            return input.available() > 0;
+        }
+
+        /**
+         * Consume the HELLO byte that switched the connection to frames
+         */
+        public void readHello() throws IOException {
+            var hello = input.read();
+            if (hello < 0)
+                throw new EOFException();
+            if (hello != HELLO)
+                throw new IOException("not a binary connection");
+        }
+
+        private String readString(int length) throws IOException {
+            if (length < 0)
+                return null;
+            if (buffer.length < length)
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            input.readFully(buffer, 0, length);
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private static int checkLength(int length) throws IOException {
+            if (length < -1)
+                throw new IOException("invalid frame length " + length);
+            return length;
+        }
+    }
+
+    /**
+     * Write a frame, the caller flushes
+     *
+     * @param output
+     * @param code   opcode or Status ordinal
+     * @param key    may be null
+     * @param value  may be null
+     */
+    public static void write(DataOutputStream output, int code, String key, String value) throws IOException {
+        var keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        var valueBytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        output.writeByte(code);
+        output.writeInt(keyBytes == null ? -1 : keyBytes.length);
+        output.writeInt(valueBytes == null ? -1 : valueBytes.length);
+        if (keyBytes != null)
+            output.write(keyBytes);
+        if (valueBytes != null)
+            output.write(valueBytes);
+    }
+
+    public static void write(DataOutputStream output, Frame frame) throws IOException {
+        write(output, frame.code, frame.key, frame.value);
+    }
+
+    /**
+     * @param frame
+     * @return the bytes write sends for frame, ready to be read
+     */
+    public static ByteBuffer encode(Frame frame) {
+        var keyBytes = frame.key == null ? null : frame.key.getBytes(StandardCharsets.UTF_8);
+        var valueBytes = frame.value == null ? null : frame.value.getBytes(StandardCharsets.UTF_8);
+        var buffer = ByteBuffer.allocate(HEADER_LENGTH + (keyBytes == null ? 0 : keyBytes.length)
+                + (valueBytes == null ? 0 : valueBytes.length));
+        buffer.put((byte) frame.code);
+        buffer.putInt(keyBytes == null ? -1 : keyBytes.length);
+        buffer.putInt(valueBytes == null ? -1 : valueBytes.length);
+        if (keyBytes != null)
+            buffer.put(keyBytes);
+        if (valueBytes != null)
+            buffer.put(valueBytes);
+        return buffer.flip();
+    }
+
+    /**
+     * Escape a value for the line based streams between servers (data transfers, replicas): backslash, \n and \r
+     * become \\, \n and \r, so values with line breaks survive
+     *
+     * @param value
+     * @return value on one line
+     */
+    public static String escapeLine(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+            return value;
+        var escaped = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '\\')
+                escaped.append("\\\\");
+            else if (c == '\n')
+                escaped.append("\\n");
+            else if (c == '\r')
+                escaped.append("\\r");
+            else
+                escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * @param line escaped with escapeLine
+     * @return the original value
+     */
+    public static String unescapeLine(String line) {
+        if (line.indexOf('\\') < 0)
+            return line;
+        var value = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            var c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                var next = line.charAt(++i);
+                value.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+}
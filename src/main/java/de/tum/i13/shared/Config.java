@@ -31,9 +31,48 @@ public class Config {
     @CommandLine.Option(names = "-c", description = "Sets the cachesize, e.g., 100 keys", defaultValue = "100")
     public int cachesize;
 
-    @CommandLine.Option(names = "-s", description = "Sets the cache displacement strategy, FIFO, LRU, LFU", defaultValue = "FIFO")
+    @CommandLine.Option(names = "-s", description = "Sets the cache displacement strategy, FIFO, LRU, LFU, TINYLFU, ARC", defaultValue = "FIFO")
     public String cachedisplacement;
 
+    @CommandLine.Option(names = "-cm", description = "Sets a byte budget for the cache instead of a number of keys, e.g., 512m, 0 uses -c", defaultValue = "0")
+    public String cachememory;
+
+    @CommandLine.Option(names = "-l2", description = "Sets the direct memory of an off heap second level cache, e.g., 16g, 0 disables it", defaultValue = "0")
+    public String offheapmemory;
+
+    @CommandLine.Option(names = "-wb", description = "Sets the write back mode, off or the flush interval in ms with an optional limit of dirty bytes, e.g., 100:64m", defaultValue = "off")
+    public String writeback;
+
+    @CommandLine.Option(names = "-wu", description = "Sets the interval in seconds of the hot key snapshot that warms the cache after a restart, 0 disables it", defaultValue = "0")
+    public long warmupinterval;
+
+    @CommandLine.Option(names = "-wt", arity = "1", description = "Sets whether keys received from another server are prefetched into the free room of the cache, true or false", defaultValue = "true")
+    public boolean warmtransfers;
+
+    @CommandLine.Option(names = "-nio", description = "Sets the number of selector event loops serving clients, 0 starts a thread per connection", defaultValue = "0")
+    public int nioloops;
+
+    @CommandLine.Option(names = "-nw", description = "Sets the number of worker threads processing requests of the event loops", defaultValue = "16")
+    public int nioworkers;
+
+    @CommandLine.Option(names = "-mc", description = "Sets the number of threads processing requests, 0 processes them on the thread of every connection", defaultValue = "0")
+    public int maxconnections;
+
+    @CommandLine.Option(names = "-q", description = "Sets how many requests may wait for a thread (-mc, -nio) before server_busy is answered", defaultValue = "1000")
+    public int queuesize;
+
+    @CommandLine.Option(names = "-vt", arity = "1", description = "Sets whether connections run on virtual threads, true or false", defaultValue = "false")
+    public boolean virtualthreads;
+
+    @CommandLine.Option(names = "-e", description = "Sets the storage engine, FILE (one file per key), LOG (append only segments) or LSM (log structured merge tree)", defaultValue = "FILE")
+    public String storageengine;
+
+    @CommandLine.Option(names = "-fs", description = "Sets when the write ahead log of LOG and LSM is synced to disk, always, os or an interval in ms, e.g., 100", defaultValue = "os")
+    public String fsync;
+
+    @CommandLine.Option(names = "-z", description = "Sets the compression of stored values, none or deflate with an optional minimum value size in bytes, e.g., deflate:256", defaultValue = "none")
+    public String compression;
+
     @CommandLine.Option(names = "-h", description = "Displays help", usageHelp = true)
     public boolean usagehelp;
 
@@ -74,6 +113,19 @@ public class Config {
                 ", loglevel='" + loglevel + '\'' +
                 ", cachesize=" + cachesize +
                 ", cachedisplacement='" + cachedisplacement + '\'' +
+                ", cachememory='" + cachememory + '\'' +
+                ", offheapmemory='" + offheapmemory + '\'' +
+                ", writeback='" + writeback + '\'' +
+                ", warmupinterval=" + warmupinterval +
+                ", warmtransfers=" + warmtransfers +
+                ", nioloops=" + nioloops +
+                ", nioworkers=" + nioworkers +
+                ", maxconnections=" + maxconnections +
+                ", queuesize=" + queuesize +
+                ", virtualthreads=" + virtualthreads +
+                ", storageengine='" + storageengine + '\'' +
+                ", fsync='" + fsync + '\'' +
+                ", compression='" + compression + '\'' +
                 ", usagehelp=" + usagehelp +
                 '}';
     }
@@ -3,6 +3,8 @@ package de.tum.i13.shared.datastructure;
 import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 public class ActiveConnection implements AutoCloseable {
@@ -10,6 +12,9 @@ public class ActiveConnection implements AutoCloseable {
     public Socket socket;
     private PrintWriter output;
     private BufferedReader input;
+    //locks instead of synchronized: a virtual thread blocked on a read inside synchronized would pin its carrier
+    private final Lock outputLock = new ReentrantLock();
+    private final Lock inputLock = new ReentrantLock();
     
     public ActiveConnection(Socket socket, PrintWriter output, BufferedReader input) {
         this.socket = socket;
@@ -48,26 +53,63 @@ public class ActiveConnection implements AutoCloseable {
     }
     
     
-    @SuppressWarnings("SynchronizeOnNonFinalField")
     public void writeln(String command) {
-        synchronized (this.output) {
+        outputLock.lock();
+        try {
+            output.write(command + "\r\n");
+            output.flush();
+        } finally {
+            outputLock.unlock();
+        }
+    }
+    
+    /**
+     * Buffer a line without sending it, for pipelined requests and responses. Send it with flush or writeln
+     *
+     * @param command
+     */
+    public void write(String command) {
+        outputLock.lock();
+        try {
             output.write(command + "\r\n");
+        } finally {
+            outputLock.unlock();
+        }
+    }
+    
+    public void flush() {
+        outputLock.lock();
+        try {
             output.flush();
+        } finally {
+            outputLock.unlock();
+        }
+    }
+    
+    /**
+     * @return true if a readLine finds data that already arrived, e.g. the next one of pipelined requests
+     */
+    public boolean ready() {
+        inputLock.lock();
+        try {
+            return input.ready();
+        } catch (IOException e) {
+            return false;
+        } finally {
+            inputLock.unlock();
         }
     }
     
     
-    @SuppressWarnings("SynchronizeOnNonFinalField")
     public String readLine() {
-        synchronized (this.input) {
-            String response;
-            try {
-                response = input.readLine();
-            } catch (IOException e) {
-                logger.severe(e.getMessage());
-                return null;
-            }
-            return response;
+        inputLock.lock();
+        try {
+            return input.readLine();
+        } catch (IOException e) {
+            logger.severe(e.getMessage());
+            return null;
+        } finally {
+            inputLock.unlock();
         }
     }
     
@@ -0,0 +1,86 @@
+import de.tum.i13.server.kv.Database;
+import de.tum.i13.shared.Config;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how Database scales with concurrent client threads. Every thread runs a mix of 90% gets and 10% puts on
+ * random keys for a few seconds, once directly and once with every call synchronized on the database, which is how
+ * Database behaved before it used striped locks. It is a main method and not a JUnit test because it runs for minutes.
+ * <p>
+ * Usage: DatabaseContentionBenchmark [storage engine] [cache strategy], e.g. LOG LRU
+ */
+public class DatabaseContentionBenchmark {
+    static final String directory = "generated/databaseContentionBenchmark/";
+    static final int KEYS = 10000;
+    static final int CACHE_SIZE = 1000;
+    static final long DURATION_MILLIS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        var engine = args.length > 0 ? args[0] : "LOG";
+        var strategy = args.length > 1 ? args[1] : "LRU";
+        var database = new Database(Config.parseCommandlineArgs(new String[]{"-c", String.valueOf(CACHE_SIZE),
+                "-s", strategy, "-d", directory + engine, "-e", engine}));
+        for (int i = 0; i < KEYS; i++)
+            database.put("key" + i, "value of key " + i);
+
+        System.out.println("Engine;Strategy;Threads;Striped ops/s;Synchronized ops/s;");
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            var striped = run(database, threads, false);
+            var global = run(database, threads, true);
+            System.out.printf("%s;%s;%d;%d;%d;%n", engine, strategy, threads, striped, global);
+        }
+        database.close();
+    }
+
+    /**
+     * @return operations per second over all threads
+     */
+    static long run(Database database, int threads, boolean globalLock) throws InterruptedException {
+        var operations = new LongAdder();
+        var workers = new ArrayList<Thread>();
+        var end = System.currentTimeMillis() + DURATION_MILLIS;
+        for (int t = 0; t < threads; t++) {
+            var worker = new Thread(() -> {
+                var random = ThreadLocalRandom.current();
+                while (System.currentTimeMillis() < end) {
+                    var key = "key" + random.nextInt(KEYS);
+                    try {
+                        if (globalLock) {
+                            synchronized (database) {
+                                operate(database, key, random.nextInt(10) == 0);
+                            }
+                        } else {
+                            operate(database, key, random.nextInt(10) == 0);
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        return;
+                    }
+                    operations.increment();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (var worker : workers)
+            worker.join();
+        return operations.sum() * 1000 / DURATION_MILLIS;
+    }
+
+    static void operate(Database database, String key, boolean isPut) throws IOException {
+        if (isPut) {
+            database.put(key, "updated value of " + key);
+        } else {
+            try {
+                database.get(key);
+            } catch (FileNotFoundException e) {
+                System.out.println("Missing key " + key);
+            }
+        }
+    }
+}
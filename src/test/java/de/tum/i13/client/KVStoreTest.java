@@ -2,6 +2,7 @@ package de.tum.i13.client;
 
 import de.tum.i13.ecs.ECSServer;
 import de.tum.i13.server.threadperconnection.KVServer;
+import de.tum.i13.shared.BinaryProtocol;
 import de.tum.i13.shared.datastructure.ServerData;
 import de.tum.i13.shared.datastructure.ServerSet;
 import org.junit.jupiter.api.AfterAll;
@@ -14,6 +15,8 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Objects;
 import java.util.Scanner;
 
@@ -166,6 +169,55 @@ class KVStoreTest {
         }
     }
 
+    @Test
+    void pipelined() throws Exception {
+        var pairs = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 200; i++)
+            pairs.put("pipelined" + i, "value" + i);
+        var responses = kvStore.putAll(pairs);
+        assertEquals(200, responses.size());
+        for (int i = 0; i < 200; i++)
+            assertEquals("put_success pipelined" + i, responses.get(i));
+        responses = kvStore.getAll(new ArrayList<>(pairs.keySet()));
+        for (int i = 0; i < 200; i++)
+            assertEquals("get_success pipelined" + i + " value" + i, responses.get(i));
+    }
+
+    @Test
+    void binary() throws Exception {
+        var value = "line one\nline two\r\n\ttabbed";
+        try {
+            kvStore.setBinary(true);
+            assertEquals("put_success binaryKey", kvStore.put("binaryKey", value));
+            assertEquals("get_success binaryKey " + value, kvStore.get("binaryKey"));
+            assertEquals("delete_success binaryKey", kvStore.delete("binaryKey"));
+            assertEquals("get_error binaryKey", kvStore.get("binaryKey"));
+            assertTrue(kvStore.put("binaryKey", "x".repeat(BinaryProtocol.MAX_VALUE_LENGTH + 1)).startsWith("error"));
+            assertEquals("get_error binaryKey", kvStore.get("binaryKey"));
+        } finally {
+            kvStore.setBinary(false);
+        }
+    }
+
+    @Test
+    void binaryAndTextAgree() throws Exception {
+        var value = "gr\u00fc\u00dfe \u20ac \u65e5\u672c \ud83d\ude00";
+        try {
+            kvStore.setBinary(true);
+            assertEquals("put_success utf8Key", kvStore.put("utf8Key", value));
+        } finally {
+            kvStore.setBinary(false);
+        }
+        assertEquals("get_success utf8Key " + value, kvStore.get("utf8Key"));
+        assertEquals("put_update utf8Key", kvStore.put("utf8Key", value + "!"));
+        try {
+            kvStore.setBinary(true);
+            assertEquals("get_success utf8Key " + value + "!", kvStore.get("utf8Key"));
+        } finally {
+            kvStore.setBinary(false);
+        }
+    }
+
     @Test
     void bigData() {
         try {
@@ -0,0 +1,56 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ARCCacheTest {
+
+    @Test
+    void adaptsToRecencyAndFrequency() throws Exception {
+        var size = 100;
+        var disk = new LRUCacheTest.MemoryEngine();
+        for (int i = 0; i < 10 * size; i++)
+            disk.put("key" + i, "value" + i);
+        var cache = new ARCCache(size, disk);
+        //a frequently read working set
+        for (int round = 0; round < 3; round++)
+            for (int i = 0; i < size / 2; i++)
+                cache.get("key" + i);
+        //keys read a second time just after they were displaced: the recency list was too small
+        for (int i = size; i < 3 * size; i++) {
+            cache.get("key" + i);
+            if (i >= 2 * size && i < 2 * size + size / 4)
+                cache.get("key" + (i - size * 3 / 4));
+        }
+        var target = cache.target();
+        assertTrue(target > 0, "target " + target);
+
+        //the working set comes back, frequent hits on ghosts shrink the recency target again
+        for (int round = 0; round < 3; round++)
+            for (int i = 0; i < size / 2; i++)
+                cache.get("key" + i);
+        assertTrue(cache.target() < target, cache.target() + " >= " + target);
+        assertTrue(cache.theCache.size() <= size);
+    }
+
+    @Test
+    void scanKeepsFrequentKeys() throws Exception {
+        var size = 100;
+        var disk = new LRUCacheTest.MemoryEngine();
+        for (int i = 0; i < 20 * size; i++)
+            disk.put("key" + i, "value" + i);
+        var cache = new ARCCache(size, disk);
+        for (int round = 0; round < 2; round++)
+            for (int i = 0; i < size / 2; i++)
+                cache.get("key" + i);
+        for (int i = size; i < 20 * size; i++)
+            cache.get("key" + i);
+        var hits = 0;
+        for (int i = 0; i < size / 2; i++)
+            hits += cache.theCache.containsKey("key" + i) ? 1 : 0;
+        assertEquals(size / 2, hits);
+        cache.delete("key0");
+        assertFalse(cache.theCache.containsKey("key0"));
+    }
+}
@@ -0,0 +1,68 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+    private final Path dir = Path.of("generated/bloomFilterTest");
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @BeforeEach
+    void clean() {
+        var files = new File(dir.toString()).listFiles();
+        if (files != null) {
+            for (File file : Objects.requireNonNull(files))
+                if (!file.isDirectory())
+                    file.delete();
+        }
+    }
+
+    @Test
+    void noFalseNegativesAndFewFalsePositives() throws Exception {
+        var filter = BloomFilter.create(10000, BloomFilter.DEFAULT_BITS_PER_KEY);
+        for (int i = 0; i < 10000; i++)
+            filter.add("key" + i);
+
+        var bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+        var read = BloomFilter.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+        for (int i = 0; i < 10000; i++)
+            assertTrue(read.mightContain("key" + i));
+
+        var falsePositives = 0;
+        for (int i = 0; i < 10000; i++)
+            if (read.mightContain("missing" + i))
+                falsePositives++;
+        //10 bits per key give about 1%
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void lsmMissesAreAnsweredByFilters() throws Exception {
+        var store = new LSMStore(dir, 256);
+        for (int i = 0; i < 100; i++)
+            store.put("key" + i, "value" + i);
+        store.close();
+
+        var reopened = new LSMStore(dir, 256);
+        for (int i = 0; i < 100; i++) {
+            final var missing = "missing" + i;
+            assertThrows(FileNotFoundException.class, () -> reopened.get(missing));
+        }
+        assertEquals("value42", reopened.get("key42"));
+        var metrics = reopened.filterMetrics();
+        assertTrue(metrics.getNegatives() > 0);
+        assertTrue(metrics.getFalsePositiveRate() < 0.1, metrics.toString());
+        reopened.close();
+    }
+}
@@ -0,0 +1,54 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheMemoryTest {
+
+    @Test
+    void parseBytes() {
+        assertEquals(512L << 20, Cache.parseBytes("512m"));
+        assertEquals(64L << 10, Cache.parseBytes("64K"));
+        assertEquals(2L << 30, Cache.parseBytes("2g"));
+        assertEquals(1000, Cache.parseBytes("1000"));
+        assertEquals(0, Cache.parseBytes("0"));
+        assertThrows(IllegalArgumentException.class, () -> Cache.parseBytes("lots"));
+    }
+
+    @Test
+    void everyStrategyStaysWithinTheBudget() throws Exception {
+        var budget = 256L << 10;
+        var disk = new LRUCacheTest.MemoryEngine();
+        var random = new Random(42);
+        for (int i = 0; i < 2000; i++)
+            disk.put("key" + i, "x".repeat(10 + random.nextInt(10_000)));
+        List<Cache> caches = List.of(new FIFOCache(10, budget, disk), new LRUCache(10, budget, disk),
+                new LFUCache(10, budget, disk), new TinyLFUCache(10, budget, disk), new ARCCache(10, budget, disk));
+        for (var cache : caches) {
+            for (int i = 0; i < 20_000; i++)
+                cache.get("key" + random.nextInt(2000));
+            var bytes = cache.theCache.entrySet().stream()
+                    .mapToLong(e -> Cache.ENTRY_OVERHEAD + e.getKey().length() + e.getValue().length()).sum();
+            var name = cache.getClass().getSimpleName();
+            assertEquals(bytes, cache.weight(), name);
+            assertTrue(bytes <= budget, name + " holds " + bytes);
+            //far more than the 10 keys of -c
+            assertTrue(cache.theCache.size() > 20, name + " holds " + cache.theCache.size() + " keys");
+        }
+    }
+
+    @Test
+    void valuesLargerThanTheBudgetAreNotCached() throws Exception {
+        var disk = new LRUCacheTest.MemoryEngine();
+        var cache = new LRUCache(10, 1024, disk);
+        cache.put("small", "value");
+        cache.put("large", "x".repeat(2000));
+        assertEquals("x".repeat(2000), cache.get("large"));
+        assertFalse(cache.theCache.containsKey("large"));
+        assertTrue(cache.theCache.containsKey("small"));
+    }
+}
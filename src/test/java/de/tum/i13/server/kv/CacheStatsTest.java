@@ -0,0 +1,48 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheStatsTest {
+
+    @Test
+    void countHitsMissesAndEvictions() throws Exception {
+        var cache = new LRUCache(2, new LRUCacheTest.MemoryEngine());
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        assertEquals(1, cache.stats.evictions.sum());
+
+        assertEquals("3", cache.get("c"));
+        assertEquals("1", cache.get("a"));
+        assertEquals(1, cache.stats.hits.sum());
+        assertEquals(1, cache.stats.misses.sum());
+        assertEquals(1, cache.stats.loads.sum());
+        assertEquals(0.5, cache.stats.hitRatio());
+        //loading a displaced b
+        assertEquals(2, cache.stats.evictions.sum());
+
+        //deletes are no evictions
+        cache.delete("a");
+        assertEquals(2, cache.stats.evictions.sum());
+        assertThrows(FileNotFoundException.class, () -> cache.get("a"));
+        assertEquals(1, cache.stats.missingHits.sum());
+        assertEquals(1, cache.stats.loads.sum());
+    }
+
+    @Test
+    void bytesInBothModes() throws Exception {
+        var byKeys = new FIFOCache(10, new LRUCacheTest.MemoryEngine());
+        var byBytes = new FIFOCache(0, 1 << 20, new LRUCacheTest.MemoryEngine());
+        for (var cache : new Cache[]{byKeys, byBytes}) {
+            cache.put("apple", "pie");
+            cache.put("apple", "cheesecake");
+            assertEquals(Cache.ENTRY_OVERHEAD + "apple".length() + "cheesecake".length(), cache.bytes());
+        }
+        assertEquals(1, byKeys.weight());
+        assertEquals(byBytes.bytes(), byBytes.weight());
+    }
+}
@@ -0,0 +1,89 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheWarmerTest {
+    private final Path dir = Path.of("generated/cacheWarmerTest");
+
+    @BeforeEach
+    void clean() throws Exception {
+        if (Files.exists(dir)) {
+            try (var files = Files.walk(dir)) {
+                for (var file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void restoreHotKeysAfterRestart() throws Exception {
+        var before = new Database(4, "LRU", dir);
+        before.startWarmer(3600);
+        for (int i = 0; i < 10; i++)
+            before.put("key" + i, "value" + i);
+        before.get("key2");
+        before.close();
+        assertEquals(List.of("key2", "key9", "key8", "key7"),
+                Files.readAllLines(dir.resolve(CacheWarmer.SNAPSHOT)));
+
+        var after = new Database(4, "LRU", dir);
+        assertTrue(after.hotKeys().isEmpty());
+        after.startWarmer(3600);
+        awaitCached(after, 4);
+        assertEquals(List.of("key2", "key7", "key8", "key9"), after.hotKeys().stream().sorted().collect(Collectors.toList()));
+        after.close();
+    }
+
+    @Test
+    void transferredKeysBypassTheCache() throws Exception {
+        var database = new Database(4, "LRU", dir);
+        database.put("apple", "pie");
+        assertEquals(KeyStatus.Updated, database.putUncached("apple", "crumble"));
+        database.putUncached("cake", "cheese");
+        assertTrue(database.hotKeys().isEmpty());
+        assertEquals("crumble", database.get("apple"));
+
+        database.warm(List.of("cake", "missing"));
+        awaitCached(database, 2);
+        assertTrue(database.hotKeys().contains("cake"));
+        //no snapshot without startWarmer
+        database.close();
+        assertFalse(Files.exists(dir.resolve(CacheWarmer.SNAPSHOT)));
+    }
+
+    @Test
+    void warmTransfersOnlyIntoFreeRoom() throws Exception {
+        var database = new Database(4, "LRU", dir);
+        for (int i = 0; i < 3; i++)
+            database.put("hot" + i, "value" + i);
+        for (int i = 0; i < 10; i++)
+            database.putUncached("transferred" + i, "value" + i);
+
+        database.warm(List.of("transferred0", "transferred1", "transferred2"));
+        awaitCached(database, 4);
+        Thread.sleep(100);
+        var cached = database.hotKeys();
+        assertEquals(4, cached.size());
+        assertTrue(cached.containsAll(List.of("hot0", "hot1", "hot2")));
+
+        database.warm(List.of("transferred3", "transferred4"));
+        Thread.sleep(100);
+        assertEquals(cached, database.hotKeys());
+        database.close();
+    }
+
+    private static void awaitCached(Database database, int keys) throws InterruptedException {
+        for (int i = 0; i < 200 && database.hotKeys().size() < keys; i++)
+            Thread.sleep(10);
+        assertEquals(keys, database.hotKeys().size());
+    }
+}
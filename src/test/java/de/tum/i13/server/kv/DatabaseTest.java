@@ -17,6 +17,8 @@ class DatabaseTest {
     private final Database store = new Database(3, "FIFO", Path.of("generated/databaseTest"));
     private final Database storeLFU = new Database(3, "LFU", Path.of("generated/databaseTest"));
     private final Database storeLRU = new Database(3, "LRU", Path.of("generated/databaseTest"));
+    private final Database storeTinyLFU = new Database(3, "TINYLFU", Path.of("generated/databaseTest"));
+    private final Database storeARC = new Database(3, "ARC", Path.of("generated/databaseTest"));
     private final Database repStore = new Database(0, "LRU", Path.of("generated/databaseTest"));
     
     @BeforeEach
@@ -39,6 +41,8 @@ class DatabaseTest {
             standardTestOn(store);
             standardTestOn(storeLFU);
             standardTestOn(storeLRU);
+            standardTestOn(storeTinyLFU);
+            standardTestOn(storeARC);
         } catch (Exception e) {
             e.printStackTrace();
             fail();
@@ -98,4 +102,25 @@ class DatabaseTest {
             fail();
         }
     }
+    
+    @Test
+    void reconfigureCache() throws Exception {
+        storeLRU.put("apple", "pie");
+        storeLRU.get("apple");
+        assertTrue(storeLRU.getStats().startsWith("strategy=LRU entries=1 capacity=3 unit=keys"));
+        
+        storeLRU.reconfigureCache("ARC", null);
+        assertTrue(storeLRU.getStats().startsWith("strategy=ARC entries=0 capacity=3 unit=keys"));
+        assertEquals("pie", storeLRU.get("apple"));
+        storeLRU.reconfigureCache(null, "1m");
+        assertTrue(storeLRU.getStats().startsWith("strategy=ARC entries=0 capacity=1048576 unit=bytes"));
+        storeLRU.reconfigureCache(null, "10");
+        assertTrue(storeLRU.getStats().contains("capacity=10 unit=keys"));
+        assertEquals("pie", storeLRU.get("apple"));
+        assertTrue(storeLRU.getStats().contains("misses=1"));
+        
+        assertThrows(IllegalArgumentException.class, () -> storeLRU.reconfigureCache("MRU", null));
+        assertThrows(IllegalArgumentException.class, () -> storeLRU.reconfigureCache(null, "0"));
+        assertThrows(IllegalArgumentException.class, () -> storeLRU.reconfigureCache(null, "lots"));
+    }
 }
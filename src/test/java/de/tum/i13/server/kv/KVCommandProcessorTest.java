@@ -2,6 +2,8 @@ package de.tum.i13.server.kv;
 
 import de.tum.i13.server.threadperconnection.ECSCommunicationThread;
 import de.tum.i13.server.threadperconnection.KVServer;
+import de.tum.i13.shared.BinaryProtocol;
+import de.tum.i13.shared.BinaryProtocol.Frame;
 import de.tum.i13.shared.datastructure.ServerData;
 import org.junit.jupiter.api.Test;
 import org.mockito.configuration.IMockitoConfiguration;
@@ -41,4 +43,28 @@ class KVCommandProcessorTest {
         assertEquals("get_error hello", kv.process("get hello"));
         assertEquals("delete_error fullman", kv.process("delete fullman"));
     }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @Test
+    void processFrames() {
+        var kvServer = new KVServer();
+        KVCommandProcessor kv = new KVCommandProcessor(new Database(100, "LRU",
+                Path.of("generated/KVCommandProcessorTest")), kvServer, new ECSCommunicationThread(kvServer));
+        kvServer.setServerData(new ServerData());
+        var dir = new File("generated/KVCommandProcessorTest");
+        if (dir.listFiles() != null) {
+            for (File file : Objects.requireNonNull(dir.listFiles()))
+                if (!file.isDirectory())
+                    file.delete();
+        }
+        var value = "first line\nsecond line";
+        assertEquals("put_success frame", kv.process(new Frame(BinaryProtocol.PUT, "frame", value)).toString());
+        var get = kv.process(new Frame(BinaryProtocol.GET, "frame", null));
+        assertEquals(BinaryProtocol.Status.get_success, get.getStatus());
+        assertEquals(value, get.value);
+        //the text protocol cannot send the line break
+        assertEquals("get_success frame first line  second line", kv.process("get frame"));
+        assertEquals("delete_success frame", kv.process(new Frame(BinaryProtocol.DELETE, "frame", null)).toString());
+        assertEquals(BinaryProtocol.Status.error, kv.process(new Frame(BinaryProtocol.PUT, "frame", null)).getStatus());
+    }
 }
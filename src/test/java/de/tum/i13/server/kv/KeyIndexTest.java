@@ -0,0 +1,80 @@
+package de.tum.i13.server.kv;
+
+import de.tum.i13.shared.Hash;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyIndexTest {
+    private final Path dir = Path.of("generated/keyIndexTest");
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @BeforeEach
+    void clean() {
+        var files = new File(dir.toString()).listFiles();
+        if (files != null) {
+            for (File file : Objects.requireNonNull(files))
+                if (!file.isDirectory())
+                    file.delete();
+        }
+    }
+
+    @Test
+    void rangeMatchesHashFilter() {
+        var keys = IntStream.range(0, 200).mapToObj(i -> "key" + i).collect(Collectors.toList());
+        var index = new KeyIndex(keys);
+        var first = new Hash("key17").md5Value;
+        var last = new Hash("key150").md5Value.max(first);
+        var expected = keys.stream().filter(key -> new HashedKey(key).isIn(first, last)).collect(Collectors.toSet());
+        var range = index.range(first, last);
+        assertEquals(expected, Set.copyOf(range));
+        assertTrue(range.contains("key17"));
+        assertEquals(200, index.range(BigInteger.ZERO, Hash.getMaxHash().md5Value).size());
+    }
+
+    @Test
+    void checkpointRoundTrip() throws Exception {
+        Files.createDirectories(dir);
+        var checkpoint = dir.resolve("keys.index");
+        var index = new KeyIndex();
+        index.add("apple");
+        index.add("pie");
+        index.remove("pie");
+        index.checkpoint(checkpoint);
+
+        var loaded = KeyIndex.load(checkpoint);
+        assertNotNull(loaded);
+        assertEquals(index.keys(), loaded.keys());
+
+        Files.write(checkpoint, new byte[]{0, 0, 0, 1, 0});
+        assertNull(KeyIndex.load(checkpoint));
+        assertNull(KeyIndex.load(dir.resolve("missing.index")));
+    }
+
+    @Test
+    void fileEngineKeepsIndexAcrossRestart() throws Exception {
+        var engine = new FileStorageEngine(dir);
+        engine.put("apple", "pie");
+        engine.put("cake", "cheese");
+        engine.delete("cake");
+        engine.close();
+
+        var reopened = new FileStorageEngine(dir);
+        assertEquals(1, reopened.keySet().size());
+        assertTrue(reopened.contains("apple"));
+        assertFalse(reopened.contains("cake"));
+        //the checkpoint is consumed, a crash now rebuilds the index from the files
+        assertFalse(Files.exists(dir.resolve("keys" + FileStorageEngine.SUFFIX + ".index")));
+        reopened.close();
+    }
+}
@@ -0,0 +1,59 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LFUCacheTest {
+
+    @Test
+    void evictLeastFrequentlyUsed() throws Exception {
+        var cache = new LFUCache(3, new LRUCacheTest.MemoryEngine());
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.get("a");
+        cache.get("c");
+        cache.put("d", "4");
+        assertEquals(Set.of("a", "c", "d"), Set.copyOf(cache.theCache.keySet()));
+        assertEquals(3, cache.frequency("a"));
+        //same frequency, the older key goes first
+        cache.put("e", "5");
+        assertEquals(Set.of("a", "c", "e"), Set.copyOf(cache.theCache.keySet()));
+        cache.delete("a");
+        assertEquals(0, cache.frequency("a"));
+        assertEquals(2, cache.theCache.size());
+    }
+
+    @Test
+    void coldKeysAgeOut() throws Exception {
+        var size = 10;
+        var cache = new LFUCache(size, new LRUCacheTest.MemoryEngine());
+        cache.put("old", "hot long ago");
+        for (int i = 0; i < 40; i++)
+            cache.get("old");
+        //the other keys are read a few times each for many aging periods
+        for (int round = 0; round < 20 * LFUCache.AGING_PERIOD; round++)
+            for (int i = 0; i < size * 2; i++)
+                cache.put("key" + i, "value" + i);
+        assertFalse(cache.theCache.containsKey("old"));
+        assertEquals(size, cache.theCache.size());
+    }
+
+    @Test
+    void staysBounded() throws Exception {
+        var cache = new LFUCache(100, new LRUCacheTest.MemoryEngine());
+        for (int i = 0; i < 100_000; i++) {
+            cache.put("key" + (i % 1000), "value");
+            cache.get("key" + (i % 1000));
+        }
+        assertEquals(100, cache.theCache.size());
+        var frequencies = 0;
+        for (var key : cache.theCache.keySet())
+            frequencies += cache.frequency(key) > 0 ? 1 : 0;
+        assertEquals(100, frequencies);
+    }
+}
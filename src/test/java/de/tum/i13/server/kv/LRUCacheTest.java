@@ -0,0 +1,118 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LRUCacheTest {
+
+    @Test
+    void evictLeastRecentlyUsed() throws Exception {
+        var cache = new LRUCache(3, new MemoryEngine());
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.put("d", "4");
+        assertEquals(Set.of("a", "c", "d"), Set.copyOf(cache.theCache.keySet()));
+        cache.put("c", "33");
+        cache.put("e", "5");
+        assertEquals(Set.of("c", "d", "e"), Set.copyOf(cache.theCache.keySet()));
+        cache.delete("d");
+        assertEquals(2, cache.theCache.size());
+        assertThrows(FileNotFoundException.class, () -> cache.get("d"));
+    }
+
+    @Test
+    void millionEntriesFromManyThreads() throws Exception {
+        var size = 1_000_000;
+        var disk = new MemoryEngine();
+        var cache = new LRUCache(size / 2, disk);
+        for (int i = 0; i < size; i++)
+            cache.put("key" + i, "value" + i);
+        assertEquals(size / 2, cache.theCache.size());
+
+        var threads = new ArrayList<Thread>();
+        var errors = new ConcurrentHashMap<String, Throwable>();
+        for (int t = 0; t < 8; t++) {
+            var thread = new Thread(() -> {
+                var random = ThreadLocalRandom.current();
+                try {
+                    for (int i = 0; i < 100_000; i++) {
+                        var key = "key" + random.nextInt(size);
+                        if (random.nextInt(10) == 0)
+                            cache.put(key, "value" + key.substring(3));
+                        else
+                            assertEquals("value" + key.substring(3), cache.get(key));
+                    }
+                } catch (Throwable e) {
+                    errors.put(Thread.currentThread().getName(), e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads)
+            thread.join();
+        assertTrue(errors.isEmpty(), errors.toString());
+        assertEquals(size / 2, cache.theCache.size());
+    }
+
+    /**
+     * Engine without disk access, so the test measures the cache only
+     */
+    static class MemoryEngine implements StorageEngine {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+
+        @Override
+        public String get(String key) throws FileNotFoundException {
+            var value = values.get(key);
+            if (value == null)
+                throw new FileNotFoundException(key);
+            return value;
+        }
+
+        @Override
+        public KeyStatus put(String key, String value) {
+            return values.put(key, value) == null ? KeyStatus.Created : KeyStatus.Updated;
+        }
+
+        @Override
+        public boolean delete(String key) {
+            return values.remove(key) != null;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public List<String> keySet() {
+            return new ArrayList<>(values.keySet());
+        }
+
+        @Override
+        public List<String> scan(BigInteger firstHash, BigInteger lastHash) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public StorageEngine openNamespace(String name) {
+            return new MemoryEngine();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
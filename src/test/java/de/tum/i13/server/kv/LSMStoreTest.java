@@ -0,0 +1,144 @@
+package de.tum.i13.server.kv;
+
+import de.tum.i13.shared.Hash;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LSMStoreTest {
+    private final Path dir = Path.of("generated/lsmStoreTest");
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @BeforeEach
+    void clean() {
+        var files = new File(dir.toString()).listFiles();
+        if (files != null) {
+            for (File file : Objects.requireNonNull(files))
+                if (!file.isDirectory())
+                    file.delete();
+        }
+    }
+
+    @Test
+    void putGetDelete() throws Exception {
+        var store = new LSMStore(dir);
+        assertEquals(KeyStatus.Created, store.put("apple", "pie"));
+        assertEquals(KeyStatus.Updated, store.put("apple", "crumble"));
+        assertEquals("crumble", store.get("apple"));
+        assertTrue(store.delete("apple"));
+        assertFalse(store.delete("apple"));
+        assertThrows(FileNotFoundException.class, () -> store.get("apple"));
+        assertEquals(KeyStatus.Created, store.put("apple", "again"));
+        store.close();
+    }
+
+    @Test
+    void flushAndCompact() throws Exception {
+        var store = new LSMStore(dir, 256);
+        for (int round = 0; round < 5; round++)
+            for (int i = 0; i < 50; i++)
+                store.put("key" + i, "round" + round);
+        store.delete("key7");
+        store.close();
+
+        var reopened = new LSMStore(dir, 256);
+        //noinspection StatementWithEmptyBody
+        while (reopened.compactOnce()) ;
+        assertEquals("round4", reopened.get("key42"));
+        assertThrows(FileNotFoundException.class, () -> reopened.get("key7"));
+        assertEquals(49, reopened.keySet().size());
+        reopened.close();
+    }
+
+    @Test
+    void recoverUnflushedMemtable() throws Exception {
+        var store = new LSMStore(dir);
+        store.put("not", "flushed");
+        store.put("deleted", "soon");
+        store.delete("deleted");
+        //no close, the memtable log has to bring the values back
+
+        var reopened = new LSMStore(dir);
+        assertEquals("flushed", reopened.get("not"));
+        assertFalse(reopened.contains("deleted"));
+        reopened.close();
+    }
+
+    @Test
+    void keySetInHashOrder() throws Exception {
+        var store = new LSMStore(dir, 128);
+        for (int i = 0; i < 30; i++)
+            store.put("key" + i, "value");
+        var keys = store.keySet();
+        var sorted = keys.stream().sorted(Comparator.comparing(key -> new Hash(key).md5Value))
+                .collect(Collectors.toList());
+        assertEquals(30, keys.size());
+        assertEquals(sorted, keys);
+        store.close();
+    }
+
+    @Test
+    void preferLowerLevelOverSameMaxSeq() throws Exception {
+        var keys = new TreeMap<HashedKey, String>();
+        for (int i = 0; i < 40; i++)
+            keys.put(new HashedKey("key" + i), "stale");
+        var stale = new TreeMap<>(keys);
+        keys.replaceAll((key, value) -> "fresh");
+        var half = keys.keySet().stream().skip(20).findFirst().get();
+        //a level 0 compaction wrote two level 1 tables with the same maxSeq above an older level 2 table
+        Files.createDirectories(dir);
+        SSTable.write(dir, 2, 1, 0, ValueCodec.NONE, stale.entrySet().iterator());
+        SSTable.write(dir, 1, 5, 1, ValueCodec.NONE, keys.headMap(half).entrySet().iterator());
+        SSTable.write(dir, 1, 5, 2, ValueCodec.NONE, keys.tailMap(half).entrySet().iterator());
+
+        var store = new LSMStore(dir);
+        store.baseLevelSize = 1;
+        //push one of them down, the new level 2 table has maxSeq 5 and a higher id than its sibling
+        assertTrue(store.compactOnce());
+        try (var files = Files.list(dir)) {
+            var names = files.map(f -> f.getFileName().toString()).collect(Collectors.toList());
+            assertTrue(names.stream().anyMatch(name -> name.startsWith("L2-5-")), names.toString());
+            assertTrue(names.stream().anyMatch(name -> name.startsWith("L1-5-")), names.toString());
+        }
+        for (var key : keys.keySet())
+            assertEquals("fresh", store.get(key.key), key.key);
+        store.close();
+    }
+
+    @Test
+    void listKeysWithoutReadingValues() throws Exception {
+        var entries = new TreeMap<HashedKey, String>();
+        for (int i = 0; i < 40; i++)
+            entries.put(new HashedKey("key" + i), "value" + i);
+        entries.put(new HashedKey("gone"), LSMStore.TOMBSTONE);
+        Files.createDirectories(dir);
+        var table = SSTable.write(dir, 1, 1, 0, ValueCodec.NONE, entries.entrySet().iterator());
+        //mark every value as compressed, reading one fails from now on
+        var bytes = Files.readAllBytes(table.path);
+        for (int i = 0; i < 40; i++) {
+            var value = ("value" + i).getBytes();
+            for (int at = 0; at + value.length <= bytes.length; at++)
+                if (Arrays.equals(bytes, at, at + value.length, value, 0, value.length))
+                    bytes[at] = (byte) 0xFF;
+        }
+        Files.write(table.path, bytes);
+
+        var store = new LSMStore(dir);
+        var keys = store.keySet();
+        assertEquals(40, keys.size());
+        assertFalse(keys.contains("gone"));
+        assertThrows(IllegalStateException.class, () -> store.get("key7"));
+        store.close();
+    }
+}
@@ -0,0 +1,138 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogStructuredStoreTest {
+    private final Path dir = Path.of("generated/logStructuredStoreTest");
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @BeforeEach
+    void clean() {
+        var files = new File(dir.toString()).listFiles();
+        if (files != null) {
+            for (File file : Objects.requireNonNull(files))
+                if (!file.isDirectory())
+                    file.delete();
+        }
+    }
+
+    @Test
+    void putGetDelete() throws Exception {
+        var store = new LogStructuredStore(dir);
+        assertEquals(KeyStatus.Created, store.put("apple", "pie"));
+        assertEquals(KeyStatus.Updated, store.put("apple", "crumble"));
+        store.put("multi line", "first\nsecond");
+        assertEquals("crumble", store.get("apple"));
+        assertEquals("first\nsecond", store.get("multi line"));
+        assertTrue(store.delete("apple"));
+        assertFalse(store.delete("apple"));
+        assertThrows(FileNotFoundException.class, () -> store.get("apple"));
+        store.close();
+    }
+
+    @Test
+    void recoverAfterRestart() throws Exception {
+        var store = new LogStructuredStore(dir, 64);
+        for (int i = 0; i < 20; i++)
+            store.put("key" + i, "value" + i);
+        store.delete("key3");
+        store.put("key4", "updated");
+        store.close();
+
+        var reopened = new LogStructuredStore(dir, 64);
+        assertEquals(19, reopened.keySet().size());
+        assertEquals("value7", reopened.get("key7"));
+        assertEquals("updated", reopened.get("key4"));
+        assertThrows(FileNotFoundException.class, () -> reopened.get("key3"));
+        reopened.close();
+    }
+
+    @Test
+    void mergeKeepsNewestValues() throws Exception {
+        var store = new LogStructuredStore(dir, 64);
+        for (int round = 0; round < 5; round++)
+            for (int i = 0; i < 10; i++)
+                store.put("key" + i, "round" + round);
+        store.delete("key0");
+        store.merge();
+        assertEquals("round4", store.get("key9"));
+        assertThrows(FileNotFoundException.class, () -> store.get("key0"));
+        store.close();
+
+        var reopened = new LogStructuredStore(dir, 64);
+        assertEquals("round4", reopened.get("key5"));
+        assertThrows(FileNotFoundException.class, () -> reopened.get("key0"));
+        reopened.close();
+    }
+
+    @Test
+    void keepTombstonesOfOlderSegments() throws Exception {
+        var store = new LogStructuredStore(dir, 200);
+        var pad = "x".repeat(100);
+        store.put("doomed", "value");
+        store.put("pad0", pad);
+        store.put("pad1", pad); //rolls segment 0 over
+        var oldest = Files.readAllBytes(dir.resolve("0" + LogStructuredStore.SEGMENT_SUFFIX));
+        store.delete("doomed");
+        store.put("pad2", pad); //rolls segment 1 over
+        store.merge();
+        store.close();
+        assertFalse(Files.exists(dir.resolve("0" + LogStructuredStore.SEGMENT_SUFFIX)));
+
+        //a crash before the merge deleted all of its inputs
+        Files.write(dir.resolve("0" + LogStructuredStore.SEGMENT_SUFFIX), oldest);
+        var reopened = new LogStructuredStore(dir, 200);
+        assertThrows(FileNotFoundException.class, () -> reopened.get("doomed"));
+        assertEquals(pad, reopened.get("pad0"));
+        reopened.close();
+    }
+
+    @Test
+    void restartFromHintFiles() throws Exception {
+        var store = new LogStructuredStore(dir, 64);
+        for (int i = 0; i < 20; i++)
+            store.put("key" + i, "value" + i);
+        store.delete("key3");
+        store.close();
+        //every segment got its hint file, so no value has to be read on restart
+        for (var file : Objects.requireNonNull(new File(dir.toString()).listFiles((d, name) -> name.endsWith(".seg"))))
+            assertTrue(new File(file.getPath().replace(".seg", ".hint")).exists(), file.getName());
+
+        var reopened = new LogStructuredStore(dir, 64);
+        assertEquals(19, reopened.keySet().size());
+        assertEquals("value7", reopened.get("key7"));
+        assertThrows(FileNotFoundException.class, () -> reopened.get("key3"));
+        reopened.put("key7", "after restart");
+        reopened.close();
+
+        //the hint of the last segment is stale now and has been rewritten on close
+        var again = new LogStructuredStore(dir, 64);
+        assertEquals("after restart", again.get("key7"));
+        assertEquals(19, again.keySet().size());
+        again.close();
+    }
+
+    @Test
+    void staleHintIsIgnored() throws Exception {
+        var store = new LogStructuredStore(dir);
+        store.put("apple", "pie");
+        store.close();
+        //crash after more appends: the hint no longer matches the segment size
+        var reopened = new LogStructuredStore(dir);
+        reopened.put("cake", "cheese");
+        var crashed = new LogStructuredStore(dir);
+        assertEquals("pie", crashed.get("apple"));
+        assertEquals("cheese", crashed.get("cake"));
+        reopened.close();
+        crashed.close();
+    }
+}
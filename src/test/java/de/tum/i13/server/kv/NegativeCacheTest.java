@@ -0,0 +1,54 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NegativeCacheTest {
+
+    @Test
+    void boundedAndLossy() {
+        var missing = new NegativeCache(16);
+        missing.add("a");
+        assertTrue(missing.contains("a"));
+        missing.remove("a");
+        assertFalse(missing.contains("a"));
+        for (int i = 0; i < 1000; i++)
+            missing.add("key" + i);
+        var remembered = 0;
+        for (int i = 0; i < 1000; i++)
+            remembered += missing.contains("key" + i) ? 1 : 0;
+        assertTrue(remembered <= 16);
+        assertTrue(missing.contains("key999"));
+    }
+
+    @Test
+    void hotMissesDoNotReachTheDisk() throws Exception {
+        var reads = new AtomicInteger();
+        var disk = new LRUCacheTest.MemoryEngine() {
+            @Override
+            public String get(String key) throws FileNotFoundException {
+                reads.incrementAndGet();
+                return super.get(key);
+            }
+        };
+        for (var cache : new Cache[]{new FIFOCache(10, disk), new LRUCache(10, disk), new LFUCache(10, disk),
+                new TinyLFUCache(10, disk), new ARCCache(10, disk)}) {
+            reads.set(0);
+            for (int i = 0; i < 100; i++)
+                assertThrows(FileNotFoundException.class, () -> cache.get("nothing"));
+            assertEquals(1, reads.get(), cache.getClass().getSimpleName());
+
+            //a put makes it visible again, a delete missing
+            cache.put("nothing", "something");
+            cache.theCache.clear();
+            assertEquals("something", cache.get("nothing"));
+            cache.delete("nothing");
+            assertThrows(FileNotFoundException.class, () -> cache.get("nothing"));
+            assertEquals(2, reads.get(), cache.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.tum.i13.server.kv;
+
+import de.tum.i13.shared.Config;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapCacheTest {
+    private final Path dir = Path.of("generated/offHeapCacheTest");
+
+    @BeforeEach
+    void clean() throws Exception {
+        if (Files.exists(dir)) {
+            try (var files = Files.walk(dir)) {
+                for (var file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void cacheWriteThroughAndDelete() throws Exception {
+        var disk = new LRUCacheTest.MemoryEngine();
+        var offHeap = new OffHeapCache(disk, 1 << 20);
+        offHeap.put("apple", "pie");
+        assertEquals("pie", disk.get("apple"));
+        assertEquals("pie", offHeap.get("apple"));
+        assertEquals(1, offHeap.getHits());
+
+        disk.put("cake", "cheese");
+        assertEquals("cheese", offHeap.get("cake"));
+        assertEquals(1, offHeap.getMisses());
+        assertEquals("cheese", offHeap.get("cake"));
+        assertEquals(2, offHeap.getHits());
+
+        offHeap.delete("apple");
+        assertThrows(FileNotFoundException.class, () -> offHeap.get("apple"));
+    }
+
+    @Test
+    void ringDisplacesOldestRecords() throws Exception {
+        var disk = new LRUCacheTest.MemoryEngine();
+        var offHeap = new OffHeapCache(disk, 64 * 1024);
+        var value = "ä".repeat(500);
+        for (int i = 0; i < 1000; i++)
+            offHeap.put("key" + i, value + i);
+        assertTrue(offHeap.usedBytes() <= 64 * 1024);
+        //newest first, the newest keys are still off heap
+        for (int i = 999; i >= 0; i--)
+            assertEquals(value + i, offHeap.get("key" + i));
+        assertTrue(offHeap.getHits() > 10, "hits " + offHeap.getHits());
+        assertTrue(offHeap.getMisses() > 900);
+    }
+
+    @Test
+    void databaseWithSecondLevel() throws Exception {
+        var database = new Database(Config.parseCommandlineArgs(new String[]{"-c", "2", "-s", "LRU", "-d", dir.toString(),
+                "-e", "LOG", "-l2", "1m"}));
+        for (int i = 0; i < 20; i++)
+            database.put("key" + i, "value" + i);
+        for (int i = 0; i < 20; i++)
+            assertEquals("value" + i, database.get("key" + i));
+        database.delete("key3");
+        assertThrows(FileNotFoundException.class, () -> database.get("key3"));
+        database.close();
+    }
+}
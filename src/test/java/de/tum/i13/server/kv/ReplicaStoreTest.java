@@ -0,0 +1,84 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaStoreTest {
+    private final Path dir = Path.of("generated/replicaStoreTest");
+
+    @BeforeEach
+    void clean() throws Exception {
+        if (Files.exists(dir)) {
+            try (var files = Files.walk(dir)) {
+                for (var file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                    Files.delete(file);
+            }
+        }
+        Files.createDirectories(dir);
+    }
+
+    @Test
+    void dropOneSource() throws Exception {
+        var primary = new FileStorageEngine(dir);
+        var replicas = new ReplicaStore(primary, dir);
+        replicas.put("127.0.0.1:5153", "apple", "pie");
+        replicas.put("127.0.0.1:5154", "cake", "cheese");
+        //the key moved to another server of the ring
+        replicas.put("127.0.0.1:5154", "apple", "crumble");
+        assertEquals("crumble", replicas.get("apple"));
+        replicas.put("127.0.0.1:5153", "bread", "rye");
+
+        replicas.drop("127.0.0.1:5153");
+        assertFalse(replicas.contains("bread"));
+        assertThrows(FileNotFoundException.class, () -> replicas.get("bread"));
+        assertEquals(Set.of("apple", "cake"), Set.copyOf(replicas.keySet()));
+        assertFalse(Files.exists(dir.resolve("replica/127.0.0.1_5153")));
+        replicas.close();
+
+        var reopened = new ReplicaStore(primary, dir);
+        assertEquals("cheese", reopened.get("cake"));
+        assertTrue(primary.keySet().isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void getWhileDropping() throws Exception {
+        var replicas = new ReplicaStore(new FileStorageEngine(dir), dir);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 20; i++)
+                replicas.put("127.0.0.1:5153", "key" + i, "value");
+            var reader = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 20; i++) {
+                    try {
+                        assertEquals("value", replicas.get("key" + i));
+                    } catch (FileNotFoundException ignored) {
+                        //dropped already
+                    }
+                }
+            });
+            replicas.drop("127.0.0.1:5153");
+            reader.get(5, TimeUnit.SECONDS);
+        }
+        replicas.close();
+    }
+
+    @Test
+    void migrateOldReplicaFiles() throws Exception {
+        Files.writeString(dir.resolve("maria" + FileStorageEngine.REPLICA_SUFFIX), "ozawa");
+        var replicas = new ReplicaStore(new FileStorageEngine(dir), dir);
+        assertEquals("ozawa", replicas.get("maria"));
+        assertFalse(Files.exists(dir.resolve("maria" + FileStorageEngine.REPLICA_SUFFIX)));
+        replicas.close();
+    }
+}
@@ -0,0 +1,77 @@
+package de.tum.i13.server.kv;
+
+import de.tum.i13.shared.Hash;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageEngineTest {
+    private final Path dir = Path.of("generated/storageEngineTest");
+
+    @BeforeEach
+    void clean() throws IOException {
+        if (!Files.exists(dir))
+            return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (var file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    void selectEngine() throws IOException {
+        assertEngine("FILE", FileStorageEngine.class);
+        assertEngine("LOG", LogStructuredStore.class);
+        assertEngine("LSM", LSMStore.class);
+        //the default of -e and unknown names fall back to one file per key
+        assertEngine(null, FileStorageEngine.class);
+        assertEngine("BTREE", FileStorageEngine.class);
+    }
+
+    @Test
+    void sameBehaviourOnEveryEngine() throws IOException {
+        for (var name : new String[]{"FILE", "LOG", "LSM"}) {
+            var directory = dir.resolve(name);
+            var engine = StorageEngine.open(name, directory);
+            assertEquals(KeyStatus.Created, engine.put("apple", "pie"), name);
+            assertEquals(KeyStatus.Updated, engine.put("apple", "crumble"), name);
+            engine.put("pear", "tart");
+            assertEquals("crumble", engine.get("apple"), name);
+            assertTrue(engine.contains("pear"), name);
+            var appleHash = new Hash("apple").md5Value;
+            assertEquals(1, engine.scan(appleHash, appleHash).size(), name);
+            assertEquals(2, engine.scan(BigInteger.ZERO, Hash.getMaxHash().md5Value).size(), name);
+
+            var replicas = engine.openNamespace("replicas");
+            assertEquals(engine.getClass(), replicas.getClass(), name);
+            replicas.put("plum", "jam");
+            assertFalse(engine.contains("plum"), name);
+
+            assertTrue(engine.delete("pear"), name);
+            assertFalse(engine.delete("pear"), name);
+            assertThrows(FileNotFoundException.class, () -> engine.get("pear"), name);
+            replicas.close();
+            engine.close();
+
+            var reopened = StorageEngine.open(name, directory);
+            assertEquals("crumble", reopened.get("apple"), name);
+            assertEquals(1, reopened.keySet().size(), name);
+            reopened.close();
+        }
+    }
+
+    private void assertEngine(String name, Class<?> expected) throws IOException {
+        var engine = StorageEngine.open(name, dir.resolve(String.valueOf(name)));
+        assertEquals(expected, engine.getClass());
+        engine.close();
+    }
+}
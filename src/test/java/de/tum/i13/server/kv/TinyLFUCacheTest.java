@@ -0,0 +1,50 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TinyLFUCacheTest {
+
+    @Test
+    void scanKeepsFrequentKeys() throws Exception {
+        var size = 1000;
+        var disk = new LRUCacheTest.MemoryEngine();
+        for (int i = 0; i < 20 * size; i++)
+            disk.put("key" + i, "value" + i);
+        var tinyLFU = new TinyLFUCache(size, disk);
+        var lru = new LRUCache(size, disk);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < size / 2; i++) {
+                tinyLFU.get("key" + i);
+                lru.get("key" + i);
+            }
+        }
+        //e.g. the replica bootstrap reads every key once
+        for (int i = size; i < 20 * size; i++) {
+            tinyLFU.get("key" + i);
+            lru.get("key" + i);
+        }
+        var tinyLFUHits = 0;
+        var lruHits = 0;
+        for (int i = 0; i < size / 2; i++) {
+            tinyLFUHits += tinyLFU.theCache.containsKey("key" + i) ? 1 : 0;
+            lruHits += lru.theCache.containsKey("key" + i) ? 1 : 0;
+        }
+        assertEquals(0, lruHits);
+        assertTrue(tinyLFUHits > size * 0.4, "hot keys left: " + tinyLFUHits);
+        assertTrue(tinyLFU.theCache.size() <= size);
+    }
+
+    @Test
+    void deleteAndUpdate() throws Exception {
+        var cache = new TinyLFUCache(3, new LRUCacheTest.MemoryEngine());
+        for (int i = 0; i < 10; i++)
+            cache.put("key" + i, "value" + i);
+        assertTrue(cache.theCache.size() <= 3);
+        cache.put("key9", "new");
+        assertEquals("new", cache.get("key9"));
+        cache.delete("key9");
+        assertFalse(cache.theCache.containsKey("key9"));
+    }
+}
@@ -0,0 +1,88 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueCodecTest {
+    private final Path dir = Path.of("generated/valueCodecTest");
+
+    @BeforeEach
+    void clean() throws Exception {
+        if (Files.exists(dir)) {
+            try (var files = Files.walk(dir)) {
+                for (var file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                    Files.delete(file);
+            }
+        }
+        Files.createDirectories(dir);
+    }
+
+    @Test
+    void compressOnlyLongValues() throws Exception {
+        var codec = ValueCodec.parse("deflate:64");
+        var mail = Files.readString(Path.of("test_resources/eron_dataset/1"));
+        var encoded = codec.encode(mail);
+        assertTrue(encoded.length < mail.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(mail, ValueCodec.decode(encoded));
+
+        var tiny = "short äöü";
+        assertArrayEquals(tiny.getBytes(StandardCharsets.UTF_8), codec.encode(tiny));
+        assertEquals(tiny, ValueCodec.decode(codec.encode(tiny)));
+        assertEquals("", ValueCodec.decode(codec.encode("")));
+        assertEquals("none", ValueCodec.parse("none").toString());
+        assertThrows(IllegalArgumentException.class, () -> ValueCodec.parse("zip"));
+    }
+
+    @Test
+    void poolCodecsAcrossThreads() throws Exception {
+        var codec = ValueCodec.parse("deflate:16");
+        var value = "compress me ".repeat(100);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 1000; i++)
+                results.add(executor.submit(() -> ValueCodec.decode(codec.encode(value))));
+            for (var result : results)
+                assertEquals(value, result.get());
+        }
+        //a thousand threads, only a bounded number of native zlib streams is kept
+        var limit = Runtime.getRuntime().availableProcessors() * 2;
+        assertTrue(ValueCodec.deflaters.size() <= limit);
+        assertTrue(ValueCodec.inflaters.size() <= limit);
+        assertFalse(ValueCodec.deflaters.isEmpty());
+    }
+
+    @Test
+    void enginesReadValuesWrittenWithAndWithoutCompression() throws Exception {
+        var mail = Files.readString(Path.of("test_resources/eron_dataset/1")).replace("\r\n", "\n").strip();
+        for (var engine : new String[]{"FILE", "LOG", "LSM"}) {
+            var directory = dir.resolve(engine);
+            var plain = StorageEngine.open(engine, directory, FsyncPolicy.OS, ValueCodec.NONE);
+            plain.put("plain", mail);
+            plain.close();
+
+            var compressed = StorageEngine.open(engine, directory, FsyncPolicy.OS, ValueCodec.parse("deflate"));
+            compressed.put("compressed", mail);
+            assertEquals(mail, compressed.get("plain"), engine);
+            assertEquals(mail, compressed.get("compressed"), engine);
+            compressed.close();
+
+            var reopened = StorageEngine.open(engine, directory, FsyncPolicy.OS, ValueCodec.NONE);
+            assertEquals(mail, reopened.get("compressed"), engine);
+            reopened.close();
+        }
+        var plainFile = Files.size(dir.resolve("FILE/plain" + FileStorageEngine.SUFFIX));
+        var compressedFile = Files.size(dir.resolve("FILE/compressed" + FileStorageEngine.SUFFIX));
+        assertTrue(compressedFile < plainFile, compressedFile + " >= " + plainFile);
+    }
+}
@@ -0,0 +1,76 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+    private final Path dir = Path.of("generated/writeAheadLogTest");
+    private final Path file = dir.resolve("test.log");
+
+    @BeforeEach
+    void clean() throws Exception {
+        Files.createDirectories(dir);
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void concurrentAppendsAreAllWritten() throws Exception {
+        var log = new WriteAheadLog(file, FsyncPolicy.ALWAYS);
+        var pool = Executors.newFixedThreadPool(16);
+        var results = new ArrayList<Future<Long>>();
+        for (int i = 0; i < 1000; i++) {
+            final var record = i;
+            results.add(pool.submit(() -> log.append(ByteBuffer.allocate(8).putLong(0, record))));
+        }
+        var ends = new HashSet<Long>();
+        for (var result : results)
+            ends.add(result.get());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        log.close();
+
+        //every record got its own position and is in the file
+        assertEquals(1000, ends.size());
+        var content = ByteBuffer.wrap(Files.readAllBytes(file));
+        assertEquals(8000, content.capacity());
+        var records = new HashSet<Long>();
+        while (content.hasRemaining())
+            records.add(content.getLong());
+        assertEquals(1000, records.size());
+    }
+
+    @Test
+    void reopenAppendsBehindTheEnd() throws Exception {
+        var log = new WriteAheadLog(file, FsyncPolicy.parse("10"));
+        var end = log.enqueue(ByteBuffer.allocate(4).putInt(0, 1));
+        log.close();
+        //committing after close returns right away, close wrote the record
+        log.commit(end);
+
+        var reopened = new WriteAheadLog(file, FsyncPolicy.OS);
+        assertEquals(4, reopened.size());
+        assertEquals(8, reopened.append(ByteBuffer.allocate(4).putInt(0, 2)));
+        reopened.close();
+        assertEquals(8, Files.size(file));
+    }
+
+    @Test
+    void parsePolicy() {
+        assertSame(FsyncPolicy.ALWAYS, FsyncPolicy.parse("always"));
+        assertSame(FsyncPolicy.OS, FsyncPolicy.parse("os"));
+        assertEquals("100ms", FsyncPolicy.parse("100").toString());
+        assertEquals("100ms", FsyncPolicy.parse("100ms").toString());
+        assertThrows(IllegalArgumentException.class, () -> FsyncPolicy.parse("sometimes"));
+    }
+}
@@ -0,0 +1,88 @@
+package de.tum.i13.server.kv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBackStoreTest {
+
+    @Test
+    void coalesceUpdates() throws Exception {
+        var disk = new CountingEngine();
+        var store = new WriteBackStore(disk, 60_000, 1 << 20);
+        assertEquals(KeyStatus.Created, store.put("apple", "pie1"));
+        for (int i = 2; i <= 100; i++)
+            assertEquals(KeyStatus.Updated, store.put("apple", "pie" + i));
+        assertEquals("pie100", store.get("apple"));
+        assertEquals(0, disk.puts.get());
+        assertTrue(store.getDirtyBytes() > 0);
+
+        store.flush();
+        assertEquals(1, disk.puts.get());
+        assertEquals("pie100", disk.get("apple"));
+        assertEquals(0, store.getDirtyBytes());
+    }
+
+    @Test
+    void deleteIsDirtyToo() throws Exception {
+        var disk = new CountingEngine();
+        disk.put("apple", "pie");
+        var store = new WriteBackStore(disk, 60_000, 1 << 20);
+        assertFalse(store.delete("cake"));
+        assertTrue(store.delete("apple"));
+        assertFalse(store.contains("apple"));
+        assertThrows(FileNotFoundException.class, () -> store.get("apple"));
+        assertTrue(disk.contains("apple"));
+
+        //keySet flushes first
+        assertTrue(store.keySet().isEmpty());
+        assertFalse(disk.contains("apple"));
+    }
+
+    @Test
+    void flushWhenTooDirty() throws Exception {
+        var disk = new CountingEngine();
+        var store = new WriteBackStore(disk, 60_000, 1000);
+        for (int i = 0; i < 100; i++)
+            store.put("key" + i, "value" + i);
+        assertTrue(disk.puts.get() > 0);
+        assertTrue(store.getDirtyBytes() <= 1000);
+    }
+
+    @Test
+    void flushInBackgroundAndOnClose() throws Exception {
+        var disk = new CountingEngine();
+        var store = new WriteBackStore(disk, 10, 1 << 20);
+        store.put("apple", "pie");
+        for (int i = 0; i < 100 && disk.puts.get() == 0; i++)
+            Thread.sleep(10);
+        assertEquals("pie", disk.get("apple"));
+
+        var closing = new WriteBackStore(disk, 60_000, 1 << 20);
+        closing.put("cake", "cheese");
+        closing.close();
+        assertEquals("cheese", disk.get("cake"));
+    }
+
+    @Test
+    void wrapParsesPolicy() {
+        var disk = new CountingEngine();
+        assertSame(disk, WriteBackStore.wrap(disk, "off"));
+        assertTrue(WriteBackStore.wrap(disk, "100ms") instanceof WriteBackStore);
+        assertTrue(WriteBackStore.wrap(disk, "100:16m") instanceof WriteBackStore);
+        assertThrows(IllegalArgumentException.class, () -> WriteBackStore.wrap(disk, "often"));
+    }
+
+    private static class CountingEngine extends LRUCacheTest.MemoryEngine {
+        final AtomicInteger puts = new AtomicInteger();
+
+        @Override
+        public KeyStatus put(String key, String value) {
+            puts.incrementAndGet();
+            return super.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package de.tum.i13.server.nio;
+
+import de.tum.i13.server.threadperconnection.BoundedExecutor;
+import de.tum.i13.server.threadperconnection.KVServer;
+import de.tum.i13.shared.BinaryProtocol;
+import de.tum.i13.shared.BinaryProtocol.Frame;
+import de.tum.i13.shared.datastructure.ActiveConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioServerTest {
+    private final EchoServer kv = new EchoServer();
+    private ServerSocketChannel channel;
+    private final BoundedExecutor workers = new BoundedExecutor("test-worker", 1, 1);
+    private NioServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        kv.setRunning(true);
+        channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress("127.0.0.1", 0));
+        server = new NioServer(kv, 2, workers);
+        new Thread(() -> server.serve(channel)).start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        kv.setRunning(false);
+        channel.close();
+    }
+
+    @Test
+    void answerRequestsInOrder() throws Exception {
+        try (var client = connect()) {
+            assertEquals("welcome", client.readLine());
+            for (int i = 0; i < 100; i++)
+                client.writeln("get key" + i);
+            for (int i = 0; i < 100; i++)
+                assertEquals("echo get key" + i, client.readLine());
+            var value = "value".repeat(10_000);
+            client.writeln("put key " + value);
+            assertEquals("echo put key " + value, client.readLine());
+        }
+    }
+
+    @Test
+    void answerBeforeClosing() throws Exception {
+        try (var client = connect()) {
+            assertEquals("welcome", client.readLine());
+            client.writeln("get a");
+            client.writeln("get b");
+            client.socket.shutdownOutput();
+            assertEquals("echo get a", client.readLine());
+            assertEquals("echo get b", client.readLine());
+            assertNull(client.readLine());
+        }
+    }
+
+    @Test
+    void handOverServerStreams() throws Exception {
+        try (var client = connect()) {
+            assertEquals("welcome", client.readLine());
+            client.writeln("replica service 127.0.0.1:5153\r\nput a 1\r\nput b 2");
+            assertEquals("replica service 127.0.0.1:5153", kv.handedOver.poll(5, TimeUnit.SECONDS));
+            var ac = kv.connections.poll(5, TimeUnit.SECONDS);
+            assertNotNull(ac);
+            assertEquals("put a 1", ac.readLine());
+            assertEquals("put b 2", ac.readLine());
+            ac.writeln("blocking again");
+            assertEquals("blocking again", client.readLine());
+        }
+    }
+
+    @Test
+    void answerFramesOnTheLoop() throws Exception {
+        kv.release = new CountDownLatch(1);
+        try (var first = connect(); var client = connect()) {
+            assertEquals("welcome", first.readLine());
+            assertEquals("welcome", client.readLine());
+            //the only worker is busy, the frame waits in its queue like a line would
+            first.writeln("get a");
+            for (int i = 0; i < 200 && workers.getActiveCount() == 0; i++)
+                Thread.sleep(10);
+            var output = new DataOutputStream(client.socket.getOutputStream());
+            output.writeByte(BinaryProtocol.HELLO);
+            BinaryProtocol.write(output, BinaryProtocol.GET, "waiting", null);
+            output.flush();
+            for (int i = 0; i < 200 && workers.getQueueDepth() == 0; i++)
+                Thread.sleep(10);
+            assertEquals(1, workers.getQueueDepth());
+            var reader = new BinaryProtocol.FrameReader(client.socket.getInputStream());
+            kv.release.countDown();
+            assertEquals("echo get a", first.readLine());
+            assertEquals("waiting", reader.read().key);
+
+            BinaryProtocol.write(output, BinaryProtocol.PUT, "key", "line\nbreak \u20ac");
+            BinaryProtocol.write(output, BinaryProtocol.PUT, "key", "v".repeat(BinaryProtocol.MAX_VALUE_LENGTH + 1));
+            BinaryProtocol.write(output, BinaryProtocol.GET, "key", null);
+            output.flush();
+            var put = reader.read();
+            assertEquals(BinaryProtocol.PUT, put.code);
+            assertEquals("line\nbreak \u20ac", put.value);
+            var tooLong = reader.read();
+            assertEquals(BinaryProtocol.Status.error, tooLong.getStatus());
+            assertEquals(BinaryProtocol.GET, reader.read().code);
+        }
+        assertEquals(3, kv.frames.size());
+    }
+
+    @Test
+    void answerServerBusyWhenSaturated() throws Exception {
+        kv.release = new CountDownLatch(1);
+        try (var first = connect(); var second = connect(); var third = connect()) {
+            for (var client : new ActiveConnection[]{first, second, third})
+                assertEquals("welcome", client.readLine());
+            first.writeln("get a");
+            for (int i = 0; i < 200 && workers.getActiveCount() == 0; i++)
+                Thread.sleep(10);
+            second.writeln("get b");
+            for (int i = 0; i < 200 && workers.getQueueDepth() == 0; i++)
+                Thread.sleep(10);
+            third.writeln("get c");
+            assertEquals("server_busy", third.readLine());
+            assertEquals(1, workers.getRejected());
+
+            kv.release.countDown();
+            assertEquals("echo get a", first.readLine());
+            assertEquals("echo get b", second.readLine());
+            third.writeln("get c");
+            assertEquals("echo get c", third.readLine());
+        }
+    }
+
+    private ActiveConnection connect() throws Exception {
+        var socket = new Socket();
+        socket.connect(channel.getLocalAddress());
+        return new ActiveConnection(socket, new PrintWriter(new OutputStreamWriter(socket.getOutputStream())),
+                new BufferedReader(new InputStreamReader(socket.getInputStream())));
+    }
+
+    private static class EchoServer extends KVServer {
+        final BlockingQueue<String> handedOver = new ArrayBlockingQueue<>(1);
+        final BlockingQueue<ActiveConnection> connections = new ArrayBlockingQueue<>(1);
+        final Queue<Frame> frames = new ConcurrentLinkedQueue<>();
+        volatile CountDownLatch release = new CountDownLatch(0);
+
+        @Override
+        public String welcomeMessage() {
+            return "welcome";
+        }
+
+        @Override
+        public String respond(String line) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "echo " + line;
+        }
+
+        @Override
+        public void serveBlocking(ActiveConnection ac, String firstLine) {
+            handedOver.add(firstLine);
+            connections.add(ac);
+        }
+
+        @Override
+        public Frame respond(Frame request) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            frames.add(request);
+            return request;
+        }
+    }
+}
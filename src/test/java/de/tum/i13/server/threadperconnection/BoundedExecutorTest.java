@@ -0,0 +1,69 @@
+package de.tum.i13.server.threadperconnection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedExecutorTest {
+
+    @Test
+    void runOnVirtualThreads() throws Exception {
+        var executor = new BoundedExecutor("virtual", 2, 10, true);
+        var isVirtual = new CompletableFuture<Boolean>();
+        assertTrue(executor.trySubmit(() -> isVirtual.complete(Thread.currentThread().isVirtual())));
+        assertTrue(isVirtual.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    void rejectWhenSaturated() throws Exception {
+        for (var isVirtual : new boolean[]{false, true}) {
+            var executor = new BoundedExecutor("bounded", 1, 1, isVirtual);
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+            assertTrue(executor.trySubmit(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertTrue(executor.trySubmit(() -> { }));
+            assertFalse(executor.trySubmit(() -> { }));
+            assertEquals(1, executor.getRejected());
+            assertEquals(1, executor.getQueueDepth());
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void callOrBusy() throws Exception {
+        var executor = new BoundedExecutor("call", 1, 1);
+        var release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++)
+            assertTrue(executor.trySubmit(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        assertEquals("busy", executor.call(() -> "done", "busy"));
+        release.countDown();
+        executor.shutdown();
+
+        var idle = new BoundedExecutor("call", 1, 1);
+        assertEquals("done", idle.call(() -> "done", "busy"));
+        assertThrows(IllegalArgumentException.class, () -> idle.call(() -> {
+            throw new IllegalArgumentException();
+        }, "busy"));
+        idle.shutdown();
+    }
+}
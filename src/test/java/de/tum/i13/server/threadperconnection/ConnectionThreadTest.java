@@ -0,0 +1,108 @@
+package de.tum.i13.server.threadperconnection;
+
+import de.tum.i13.shared.datastructure.ActiveConnection;
+import de.tum.i13.shared.datastructure.ServerData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionThreadTest {
+    private final KVServer kv = new KVServer();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ServerSocket serverSocket;
+
+    @BeforeEach
+    void start() throws Exception {
+        kv.setServerData(new ServerData(InetAddress.getLoopbackAddress(), 5153));
+        kv.workers = new BoundedExecutor("test-request", 1, 1);
+        kv.handshakes = new BoundedExecutor("test-handshake", 1, 1);
+        kv.handshakeTimeout = 100;
+        saturate(kv.workers);
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        release.countDown();
+        kv.workers.shutdown();
+        kv.handshakes.shutdown();
+        serverSocket.close();
+    }
+
+    @Test
+    void rejectRequestsWhenSaturated() throws Exception {
+        try (var client = connect()) {
+            assertTrue(client.readLine().startsWith("Connection to Key-Value"));
+            client.writeln("get key");
+            assertEquals("server_busy", client.readLine());
+            assertEquals(1, kv.workers.getRejected());
+            //the connection stays open, its next request gets a worker once one is free
+            release.countDown();
+            client.writeln("get key");
+            assertEquals("server_stopped", client.readLine());
+        }
+        assertEquals(1, kv.workers.getRejected());
+    }
+
+    @Test
+    void admitDataTransfersWhenSaturated() throws Exception {
+        try (var server = connect()) {
+            assertTrue(server.readLine().startsWith("Connection to Key-Value"));
+            server.writeln("this is 127.0.0.1:5154");
+            //the transfer handler waits for the ECS to name the receiving server, here one that is not the sender
+            kv.transferQueue.add(new ServerData(InetAddress.getLoopbackAddress(), 6000));
+            assertEquals("Unauthorised!", server.readLine());
+        }
+        assertEquals(0, kv.workers.getRejected());
+    }
+
+    @Test
+    void serveClientsIdleAfterHandshake() throws Exception {
+        release.countDown();
+        try (var client = connect()) {
+            assertTrue(client.readLine().startsWith("Connection to Key-Value"));
+            //longer than the handshake timeout, the first request is read on the connection thread
+            Thread.sleep(300);
+            assertEquals(0, kv.handshakes.getActiveCount());
+            client.writeln("get key");
+            assertEquals("server_stopped", client.readLine());
+        }
+    }
+
+    @Test
+    void rejectConnectionsWithoutHandshakeThreads() throws Exception {
+        saturate(kv.handshakes);
+        try (var client = connect()) {
+            assertTrue(client.readLine().startsWith("Connection to Key-Value"));
+            assertEquals("server_busy", client.readLine());
+            assertNull(client.readLine());
+        }
+        assertEquals(1, kv.handshakes.getRejected());
+    }
+
+    private void saturate(BoundedExecutor executor) {
+        for (int i = 0; i < 2; i++)
+            assertTrue(executor.trySubmit(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+    }
+
+    private ActiveConnection connect() throws Exception {
+        var client = new ActiveConnection(new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort()));
+        kv.accept(serverSocket.accept());
+        return client;
+    }
+}
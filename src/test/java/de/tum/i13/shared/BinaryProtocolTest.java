@@ -0,0 +1,88 @@
+package de.tum.i13.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryProtocolTest {
+
+    @Test
+    void readWrittenFrames() throws IOException {
+        var everyByte = new StringBuilder();
+        for (char c = 0; c < 256; c++)
+            everyByte.append(c);
+        var bytes = new ByteArrayOutputStream();
+        var output = new DataOutputStream(bytes);
+        BinaryProtocol.write(output, BinaryProtocol.PUT, "key", "line\nbreak\r\n" + everyByte);
+        BinaryProtocol.write(output, BinaryProtocol.GET, "key", null);
+        BinaryProtocol.write(output, BinaryProtocol.Status.server_stopped.ordinal(), null, "");
+        output.flush();
+
+        var reader = new BinaryProtocol.FrameReader(new ByteArrayInputStream(bytes.toByteArray()));
+        var put = reader.read();
+        assertEquals(BinaryProtocol.PUT, put.code);
+        assertEquals("key", put.key);
+        assertEquals("line\nbreak\r\n" + everyByte, put.value);
+        var get = reader.read();
+        assertEquals(BinaryProtocol.GET, get.code);
+        assertNull(get.value);
+        var reply = reader.read();
+        assertEquals(BinaryProtocol.Status.server_stopped, reply.getStatus());
+        assertNull(reply.key);
+        assertEquals("", reply.value);
+        assertNull(reader.read());
+    }
+
+    @Test
+    void readNonLatin1Text() throws IOException {
+        var text = "gr\u00fc\u00dfe \u20ac \u65e5\u672c \ud83d\ude00";
+        var bytes = new ByteArrayOutputStream();
+        var output = new DataOutputStream(bytes);
+        BinaryProtocol.write(output, BinaryProtocol.PUT, text, text);
+        output.flush();
+
+        var reader = new BinaryProtocol.FrameReader(new ByteArrayInputStream(bytes.toByteArray()));
+        var put = reader.read();
+        assertEquals(text, put.key);
+        assertEquals(text, put.value);
+    }
+
+    @Test
+    void rejectInvalidLength() {
+        var frame = new byte[]{BinaryProtocol.GET, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xf0, 0, 0, 0, 0};
+        var reader = new BinaryProtocol.FrameReader(new ByteArrayInputStream(frame));
+        assertThrows(IOException.class, reader::read);
+    }
+
+    @Test
+    void skipTooLongFrames() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var output = new DataOutputStream(bytes);
+        BinaryProtocol.write(output, BinaryProtocol.PUT, "key", "v".repeat(BinaryProtocol.MAX_VALUE_LENGTH + 1));
+        BinaryProtocol.write(output, BinaryProtocol.PUT, "k".repeat(BinaryProtocol.MAX_KEY_LENGTH + 1), "value");
+        BinaryProtocol.write(output, BinaryProtocol.GET, "key", null);
+        output.flush();
+
+        var reader = new BinaryProtocol.FrameReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThrows(BinaryProtocol.FrameTooLongException.class, reader::read);
+        assertThrows(BinaryProtocol.FrameTooLongException.class, reader::read);
+        var get = reader.read();
+        assertEquals(BinaryProtocol.GET, get.code);
+        assertEquals("key", get.key);
+        assertNull(reader.read());
+    }
+
+    @Test
+    void escapeLines() {
+        for (var value : new String[]{"plain value", "a\nb\r\nc", "back\\slash\\n", "\\", "\n"}) {
+            var line = BinaryProtocol.escapeLine(value);
+            assertFalse(line.contains("\n") || line.contains("\r"));
+            assertEquals(value, BinaryProtocol.unescapeLine(line));
+        }
+    }
+}